@@ -0,0 +1,70 @@
+/**
+ * Implements benchmark.Position in the unnamed package of the game, see there, for the positions of the
+ * suite of Bench.
+ *
+ * Every position is loaded with Grid.setGrid() at the previous ply and at the current ply, just like the
+ * commented-out tests in Main do, so fiveInARow() checks the whole grid.
+ */
+
+public class BenchmarkPosition implements benchmark.Position {
+
+    private final Bench.TestPosition position;
+    private final char[][] grid;
+    private final int size;
+    private final int ply; // 'O' is to move at this ply
+    private final Grid game;
+    private Grid searchGrid; // Set up by search() for the options of the last search
+    private int searchDepth;
+    private boolean searchAlphaBeta;
+
+    public BenchmarkPosition(String name) {
+        Bench.TestPosition found = null;
+        for (Bench.TestPosition position : Bench.suite()) {
+            if (position.name.equals(name)) found = position;
+        }
+        if (found == null) throw new IllegalArgumentException("Unknown position " + name);
+        position = found;
+        grid = position.gridCurrentPly;
+        size = grid.length;
+        ply = position.previousPly + 1;
+        game = Bench.newGrid(position, 1, false);
+    }
+
+    @Override
+    public float goalFunction() {
+        float sum = 0;
+        for (int y=0; y<size; y++) {
+            for (int x=0; x<size; x++) {
+                if (grid[y][x] != '*') sum += ScoreEvaluation.goalFunction(grid, grid[y][x], x, y);
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public int findAllChildren() {
+        game.findAllChildren(ply);
+        return game.getNumOfChildren(ply);
+    }
+
+    @Override
+    public boolean fiveInARow() {
+        return game.fiveInARow(ply - 1);
+    }
+
+    @Override
+    public boolean gameIsATie() {
+        return game.gameIsATie(ply - 1);
+    }
+
+    @Override
+    public int search(int depth, boolean alphaBeta) {
+        if (searchGrid == null || searchDepth != depth || searchAlphaBeta != alphaBeta) {
+            searchGrid = Bench.newGrid(position, depth, alphaBeta);
+            searchDepth = depth;
+            searchAlphaBeta = alphaBeta;
+        }
+        searchGrid.clearSearchState();
+        return searchGrid.bestMove(SearchLimits.depth(depth)).getMove();
+    }
+}
@@ -0,0 +1,32 @@
+package benchmark;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks like org.openjdk.jmh.Main, with the same command line options, but always with the
+ * GC profiler, which adds the allocation rate and the bytes allocated per operation (gc.alloc.rate.norm) to
+ * the throughput of each benchmark. The search should not allocate at all once it is running, so a growing
+ * gc.alloc.rate.norm is as much a regression as a falling throughput.
+ *
+ * Usage: java -jar benchmarks/target/benchmarks.jar [JMH options] [benchmark regexp]
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp()) {
+            options.showHelp();
+            return;
+        }
+        Runner runner = new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build());
+        if (options.shouldList()) runner.list();
+        else runner.run();
+    }
+}
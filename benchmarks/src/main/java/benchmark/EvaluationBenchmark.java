@@ -0,0 +1,59 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The operations that the search performs at every node: scoring a move, listing the children and checking
+ * whether the game is over.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+
+    @Param({"FourInARow", "FiveInARow", "DoNotBuildTowardsLeft", "DoNotBuildTowardsLeft2", "FiveInARowDiagonal",
+            "PreventFiveInARow", "PreventFiveInARow2", "Generated15", "Generated19"})
+    public String position;
+
+    private Position loaded;
+
+    @Setup
+    public void setup() {
+        loaded = Position.load(position);
+    }
+
+    @Benchmark
+    public float goalFunction() {
+        return loaded.goalFunction();
+    }
+
+    @Benchmark
+    public int findAllChildren() {
+        return loaded.findAllChildren();
+    }
+
+    @Benchmark
+    public boolean fiveInARow() {
+        return loaded.fiveInARow();
+    }
+
+    @Benchmark
+    public boolean gameIsATie() {
+        return loaded.gameIsATie();
+    }
+}
@@ -0,0 +1,51 @@
+package benchmark;
+
+/**
+ * A game position to benchmark the game on, see BenchmarkPosition.
+ *
+ * JMH does not accept benchmarks in the unnamed package, and a class in a named package cannot refer to the
+ * classes of the game, which are all in the unnamed package. So the benchmarks only see this interface, and
+ * BenchmarkPosition implements it next to the game, where it can reach Grid, ScoreEvaluation and Test.
+ */
+public interface Position {
+
+    /**
+     * Load a position by name.
+     * @param name the name of a position of the suite of Bench, see Bench.suite().
+     */
+    static Position load(String name) {
+        try {
+            return (Position) Class.forName("BenchmarkPosition").getConstructor(String.class).newInstance(name);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not load position " + name, e);
+        }
+    }
+
+    /**
+     * @return the sum of ScoreEvaluation.goalFunction() over every symbol on the grid, each scored for its
+     * player as if it were the last move, which is how the search scores its leaves.
+     */
+    float goalFunction();
+
+    /**
+     * @return the number of children found by Grid.findAllChildren() at the current ply.
+     */
+    int findAllChildren();
+
+    /**
+     * @return Grid.fiveInARow() of the position.
+     */
+    boolean fiveInARow();
+
+    /**
+     * @return Grid.gameIsATie() of the position.
+     */
+    boolean gameIsATie();
+
+    /**
+     * Search the position for the best move of 'O' with an empty transposition table.
+     * @param alphaBeta false for plain minimax, true for alpha-beta with the options that Main uses.
+     * @return the best move, as a packed square index.
+     */
+    int search(int depth, boolean alphaBeta);
+}
@@ -0,0 +1,50 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole search for the move of the computer, to a fixed depth and with an empty transposition table,
+ * killer moves and history (see Grid.clearSearchState()), so that every invocation searches the same tree.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({"FourInARow", "FiveInARow", "DoNotBuildTowardsLeft", "DoNotBuildTowardsLeft2", "FiveInARowDiagonal",
+            "PreventFiveInARow", "PreventFiveInARow2", "Generated15", "Generated19"})
+    public String position;
+
+    @Param({"1", "2", "3", "4"})
+    public int depth;
+
+    @Param({"false", "true"})
+    public boolean alphaBeta; // false for plain minimax
+
+    private Position loaded;
+
+    @Setup
+    public void setup() {
+        loaded = Position.load(position);
+    }
+
+    @Benchmark
+    public int search() {
+        return loaded.search(depth, alphaBeta);
+    }
+}
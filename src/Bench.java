@@ -0,0 +1,177 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+/**
+ * Deterministic signature of the search, like the "bench" command of chess engines. Every position of a
+ * fixed suite is searched to a fixed depth, both by plain minimax and by alpha-beta, through the same
+ * search that newComputerMove() runs. The nodes visited, the leaves evaluated, the best move and its score
+ * only depend on the tree that is searched, not on the speed of the machine, so they are compared with a
+ * baseline file: a change that only makes the search faster leaves them all alone, while a change to the
+ * tree shows up as a changed line. The nodes per second over the whole suite measure the speed.
+ *
+ * The baseline file has one line per search: position, search, depth, nodes, leaf evaluations, best move
+ * (x,y) and score. Lines starting with '#' are comments. If the file does not exist, it is written from
+ * this run, so a baseline is updated by deleting it and running Bench again.
+ *
+ * Usage: java Bench [baselineFile [depth]]
+ * Exits with status 1 if any search differs from the baseline.
+ */
+
+public class Bench {
+
+    private static final String DEFAULT_BASELINE = "bench.txt";
+    private static final int DEFAULT_DEPTH = 4;
+    private static final int GENERATED_RADIUS = 1; // Candidate radius of the generated positions
+    private static final float ASPIRATION_WINDOW = 50; // As in Main
+
+    /**
+     * A position of the suite: the grid at the previous ply and at the current ply, where 'O' is to move.
+     */
+    static class TestPosition {
+        final String name;
+        final int previousPly;
+        final char[][] gridPreviousPly;
+        final char[][] gridCurrentPly;
+        final int candidateRadius; // See Grid.setCandidateRadius()
+        TestPosition(String name, int previousPly, char[][] gridPreviousPly, char[][] gridCurrentPly,
+                     int candidateRadius) {
+            this.name = name;
+            this.previousPly = previousPly;
+            this.gridPreviousPly = gridPreviousPly;
+            this.gridCurrentPly = gridCurrentPly;
+            this.candidateRadius = candidateRadius;
+        }
+    }
+
+    /**
+     * @return the scenarios of Test that have 'O' to move, and a position from the middle of a random game
+     * (see Test.randomGame()) on a 15 x 15 and a 19 x 19 grid. The generated positions are searched with a
+     * candidate radius, since plain minimax over every empty square of a large grid takes too long.
+     */
+    static List<TestPosition> suite() {
+        List<TestPosition> suite = new ArrayList<>();
+        suite.add(new TestPosition("FourInARow", Test.FourInARow.previousPly, Test.FourInARow.gridPreviousPly,
+                Test.FourInARow.gridCurrentPly, 0));
+        suite.add(new TestPosition("FiveInARow", Test.FiveInARow.previousPly, Test.FiveInARow.gridPreviousPly,
+                Test.FiveInARow.gridCurrentPly, 0));
+        suite.add(new TestPosition("DoNotBuildTowardsLeft", Test.DoNotBuildTowardsLeft.previousPly,
+                Test.DoNotBuildTowardsLeft.gridPreviousPly, Test.DoNotBuildTowardsLeft.gridCurrentPly, 0));
+        suite.add(new TestPosition("DoNotBuildTowardsLeft2", Test.DoNotBuildTowardsLeft2.previousPly,
+                Test.DoNotBuildTowardsLeft2.gridPreviousPly, Test.DoNotBuildTowardsLeft2.gridCurrentPly, 0));
+        suite.add(new TestPosition("FiveInARowDiagonal", Test.FiveInARowDiagonal.previousPly,
+                Test.FiveInARowDiagonal.gridPreviousPly, Test.FiveInARowDiagonal.gridCurrentPly, 0));
+        suite.add(new TestPosition("PreventFiveInARow", Test.PreventFiveInARow.previousPly,
+                Test.PreventFiveInARow.gridPreviousPly, Test.PreventFiveInARow.gridCurrentPly, 0));
+        suite.add(new TestPosition("PreventFiveInARow2", Test.PreventFiveInARow2.previousPly,
+                Test.PreventFiveInARow2.gridPreviousPly, Test.PreventFiveInARow2.gridCurrentPly, 0));
+        suite.add(generated("Generated15", 15, 21));
+        suite.add(generated("Generated19", 19, 31));
+        return suite;
+    }
+
+    private static TestPosition generated(String name, int size, int numOfMoves) {
+        int[] moves = Test.randomGame(size, numOfMoves, GENERATED_RADIUS, size); // Seeded by the size
+        return new TestPosition(name, numOfMoves - 1, Test.toGrid(size, moves, numOfMoves - 1),
+                Test.toGrid(size, moves, numOfMoves), GENERATED_RADIUS);
+    }
+
+    /**
+     * @return a grid at position with 'O' to move, set up to search to depth with the options of Main and
+     * one thread, but without the threat space search, pondering or an opening book.
+     * @param alphaBeta false for plain minimax.
+     */
+    static Grid newGrid(TestPosition position, int depth, boolean alphaBeta) {
+        Grid grid = new Grid(position.gridCurrentPly.length, depth);
+        grid.setAlphaBeta(alphaBeta);
+        grid.setMoveOrdering(true);
+        grid.setPrincipalVariationSearch(true);
+        grid.setAspirationWindow(ASPIRATION_WINDOW);
+        grid.setCandidateRadius(position.candidateRadius);
+        grid.setPly(position.previousPly);
+        grid.setGrid(position.gridPreviousPly);
+        grid.setGrid(position.gridCurrentPly);
+        grid.setPly(position.previousPly + 1);
+        return grid;
+    }
+
+    public static void main(String[] args) throws FileNotFoundException {
+        String baselineFile = (args.length > 0) ? args[0] : DEFAULT_BASELINE;
+        int depth = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_DEPTH;
+        Map<String, String> baseline = readBaseline(baselineFile);
+        List<String> lines = new ArrayList<>();
+        long nodes = 0, time = 0;
+        int changed = 0;
+        for (TestPosition position : suite()) {
+            for (boolean alphaBeta : new boolean[] {false, true}) {
+                Grid grid = newGrid(position, depth, alphaBeta);
+                long start = System.nanoTime();
+                SearchResult result = grid.bestMove(SearchLimits.depth(depth));
+                time += System.nanoTime() - start;
+                nodes += result.getNodes();
+                int size = position.gridCurrentPly.length;
+                String search = alphaBeta ? "alphabeta" : "minimax";
+                String move = result.getMove() % size + "," + result.getMove() / size;
+                String signature = result.getNodes() + " " + grid.getLeafEvaluations() + " " + move + " " +
+                        result.getScore();
+                String key = position.name + " " + search + " " + depth;
+                lines.add(key + " " + signature);
+                String expected = baseline.get(key);
+                String status = "";
+                if (expected == null) {
+                    if (!baseline.isEmpty()) status = "  (not in the baseline)";
+                } else if (expected.equals(signature)) {
+                    status = "  OK";
+                } else {
+                    status = "  CHANGED, baseline: " + expected;
+                    changed++;
+                }
+                System.out.println(String.format("%-24s %-9s %d  nodes: %d, leaf evaluations: %d, move: %s, " +
+                        "score: %s%s", position.name, search, depth, result.getNodes(), grid.getLeafEvaluations(),
+                        move, result.getScore(), status));
+            }
+        }
+        System.out.println("\nNodes: " + nodes + ", time: " + time / 1_000_000 + " ms, nodes/s: " +
+                nodes * 1_000_000_000 / Math.max(time, 1));
+        if (baseline.isEmpty()) {
+            writeBaseline(baselineFile, depth, lines);
+            System.out.println("Wrote the baseline to " + baselineFile);
+        } else if (changed > 0) {
+            System.out.println(changed + " of " + lines.size() + " searches differ from " + baselineFile);
+            System.exit(1);
+        } else {
+            System.out.println("All searches match " + baselineFile);
+        }
+    }
+
+    /**
+     * @return the lines of file, each mapped from "position search depth" to the rest of the line, or an
+     * empty map if file does not exist.
+     */
+    private static Map<String, String> readBaseline(String file) throws FileNotFoundException {
+        Map<String, String> baseline = new HashMap<>();
+        if (!new File(file).exists()) return baseline;
+        try (Scanner in = new Scanner(new File(file))) {
+            while (in.hasNextLine()) {
+                String line = in.nextLine().trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] fields = line.split("\\s+", 4);
+                baseline.put(fields[0] + " " + fields[1] + " " + fields[2], fields[3]);
+            }
+        }
+        return baseline;
+    }
+
+    private static void writeBaseline(String file, int depth, List<String> lines) throws FileNotFoundException {
+        try (PrintWriter out = new PrintWriter(file)) {
+            out.println("# Written by Bench at depth " + depth + ". To update, delete this file and run Bench again.");
+            out.println("# position search depth nodes leafEvaluations move score");
+            for (String line : lines) out.println(line);
+        }
+    }
+}
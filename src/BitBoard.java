@@ -0,0 +1,231 @@
+import java.util.Arrays;
+
+/**
+ * A game position stored as one bitset per player instead of a grid of chars.
+ *
+ * Square (x, y) is bit y * stride + x, where stride = size + 1. The extra column is never set, so a line
+ * that runs past the right or left edge of the grid hits an empty padding bit instead of wrapping onto the
+ * next row. Shifting a bitset down by 1, stride, stride + 1 or stride - 1 bits moves every square one step
+ * horizontally, vertically, diagonally or anti-diagonally, so a pattern along a line can be found for the
+ * whole grid at once with a few shifts and ANDs.
+ */
+
+public class BitBoard {
+
+    private final int size;
+    private final int stride;
+    private final long[] bitsX;
+    private final long[] bitsO;
+    private final long[] onGrid; // Bits of all squares on the grid, i.e. everything but the padding
+    private final int[] directions; // Shifts that move one step along a line
+    // Scratch space for the shifts in hasFive(), liveWindows() and winningSquares()
+    private final long[] tmpA;
+    private final long[] tmpB;
+    private final long[] tmpC;
+
+    public BitBoard(int size) {
+        this.size = size;
+        stride = size + 1;
+        int words = (size * stride + 63) >>> 6;
+        bitsX = new long[words];
+        bitsO = new long[words];
+        onGrid = new long[words];
+        tmpA = new long[words];
+        tmpB = new long[words];
+        tmpC = new long[words];
+        directions = new int[] {1, stride, stride + 1, stride - 1};
+        for (int y=0; y<size; y++) {
+            for (int x=0; x<size; x++) {
+                int bit = y*stride + x;
+                onGrid[bit >>> 6] |= 1L << bit;
+            }
+        }
+    }
+
+    /**
+     * Create a copy of other.
+     */
+    public BitBoard(BitBoard other) {
+        this(other.size);
+        System.arraycopy(other.bitsX, 0, bitsX, 0, bitsX.length);
+        System.arraycopy(other.bitsO, 0, bitsO, 0, bitsO.length);
+    }
+
+    // ---------- Conversion to and from char[][] ----------
+
+    public static BitBoard fromGrid(char[][] grid) {
+        BitBoard bitBoard = new BitBoard(grid.length);
+        for (int y=0; y<grid.length; y++) {
+            for (int x=0; x<grid.length; x++) {
+                if (grid[y][x] != '*') bitBoard.set(x, y, grid[y][x]);
+            }
+        }
+        return bitBoard;
+    }
+
+    public char[][] toGrid() {
+        char[][] grid = new char[size][size];
+        for (int y=0; y<size; y++) {
+            for (int x=0; x<size; x++) {
+                grid[y][x] = get(x, y);
+            }
+        }
+        return grid;
+    }
+
+    // ---------- Squares ----------
+
+    /**
+     * @return 'X', 'O' or '*' (blank square).
+     */
+    public char get(int x, int y) {
+        int bit = y*stride + x;
+        if ((bitsX[bit >>> 6] & (1L << bit)) != 0) return 'X';
+        if ((bitsO[bit >>> 6] & (1L << bit)) != 0) return 'O';
+        return '*';
+    }
+
+    public void set(int x, int y, char player) {
+        int bit = y*stride + x;
+        bits(player)[bit >>> 6] |= 1L << bit;
+    }
+
+    public void clear(int x, int y) {
+        int bit = y*stride + x;
+        bitsX[bit >>> 6] &= ~(1L << bit);
+        bitsO[bit >>> 6] &= ~(1L << bit);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    // ---------- Patterns ----------
+
+    /**
+     * Check if player has five in a row anywhere on the grid.
+     */
+    public boolean hasFive(char player) {
+        long[] bits = bits(player);
+        for (int d : directions) {
+            if (hasFive(bits, d)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check if the symbol of player at (x, y) is part of five in a row. Only the four lines through (x, y)
+     * are inspected, at most four squares in each direction.
+     */
+    public boolean hasFiveThrough(int x, int y, char player) {
+        long[] bits = bits(player);
+        int bit = y*stride + x;
+        for (int d : directions) {
+            int count = 1;
+            for (int b=bit+d; count<5 && isSet(bits, b); b+=d) count++;
+            for (int b=bit-d; count<5 && isSet(bits, b); b-=d) count++;
+            if (count >= 5) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Count the windows of five squares in a row that contain no symbol of the opponent, i.e. the ways in
+     * which player can still get five in a row.
+     */
+    public int liveWindows(char player) {
+        long[] opponent = (player == 'X') ? bitsO : bitsX;
+        int count = 0;
+        for (int d : directions) {
+            // tmpA = squares on the grid that are not taken by the opponent
+            for (int w=0; w<tmpA.length; w++) tmpA[w] = onGrid[w] & ~opponent[w];
+            // tmpB = first squares of five such squares in a row in direction d
+            System.arraycopy(tmpA, 0, tmpB, 0, tmpB.length);
+            for (int i=1; i<5; i++) andShifted(tmpB, tmpA, i*d);
+            for (long word : tmpB) count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Find the blank squares where player would get five in a row.
+     * @param squares receives the squares found, as packed indices y * size + x.
+     * @return the number of squares found.
+     */
+    public int winningSquares(char player, int[] squares) {
+        long[] bits = bits(player);
+        // tmpA = blank squares, tmpC = winning squares
+        for (int w=0; w<tmpA.length; w++) {
+            tmpA[w] = onGrid[w] & ~bitsX[w] & ~bitsO[w];
+            tmpC[w] = 0;
+        }
+        for (int d : directions) {
+            for (int gap=0; gap<5; gap++) {
+                // tmpB = first squares of windows of five that hold player's symbol on all squares but the
+                // gap, which is blank. Shift them up to the gap.
+                Arrays.fill(tmpB, -1L);
+                andShifted(tmpB, tmpA, gap*d);
+                for (int i=0; i<5; i++) {
+                    if (i != gap) andShifted(tmpB, bits, i*d);
+                }
+                orShiftedUp(tmpC, tmpB, gap*d);
+            }
+        }
+        int count = 0;
+        for (int w=0; w<tmpC.length; w++) {
+            for (long word=tmpC[w]; word!=0; word&=word-1) {
+                int bit = (w << 6) + Long.numberOfTrailingZeros(word);
+                squares[count++] = (bit / stride)*size + bit % stride;
+            }
+        }
+        return count;
+    }
+
+    private boolean hasFive(long[] bits, int d) {
+        // tmpA = first squares of two in a row, tmpB = first squares of four in a row, and finally
+        // tmpB = first squares of five in a row
+        System.arraycopy(bits, 0, tmpA, 0, tmpA.length);
+        andShifted(tmpA, bits, d);
+        System.arraycopy(tmpA, 0, tmpB, 0, tmpB.length);
+        andShifted(tmpB, tmpA, 2*d);
+        andShifted(tmpB, bits, 4*d);
+        for (long word : tmpB) {
+            if (word != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * dst &= src shifted down by n bits, i.e. bit i of dst is kept only if bit i + n of src is set.
+     */
+    private static void andShifted(long[] dst, long[] src, int n) {
+        int q = n >>> 6, r = n & 63;
+        for (int w=0; w<dst.length; w++) {
+            long lo = (w + q < src.length) ? src[w + q] : 0;
+            long hi = (w + q + 1 < src.length) ? src[w + q + 1] : 0;
+            dst[w] &= (r == 0) ? lo : (lo >>> r) | (hi << (64 - r));
+        }
+    }
+
+    /**
+     * dst |= src shifted up by n bits, i.e. bit i of dst is set if bit i - n of src is set.
+     */
+    private static void orShiftedUp(long[] dst, long[] src, int n) {
+        int q = n >>> 6, r = n & 63;
+        for (int w=0; w<dst.length; w++) {
+            long hi = (w - q >= 0) ? src[w - q] : 0;
+            long lo = (w - q - 1 >= 0) ? src[w - q - 1] : 0;
+            dst[w] |= (r == 0) ? hi : (hi << r) | (lo >>> (64 - r));
+        }
+    }
+
+    private boolean isSet(long[] bits, int bit) {
+        // Bits before the first row or after the last row are off the grid, the padding column takes
+        // care of the left and right edges
+        return bit >= 0 && bit < size*stride && (bits[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    private long[] bits(char player) {
+        return (player == 'X') ? bitsX : bitsO;
+    }
+}
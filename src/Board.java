@@ -0,0 +1,424 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A single, mutable game position that the search works on in place. Instead of copying the grid for
+ * every node in the tree, a move is made on the board before a child is searched and unmade again
+ * afterwards, so searching a position does not allocate any memory.
+ *
+ * The position is kept both as a grid of chars, which is what ScoreEvaluation reads, and as a BitBoard,
+ * which is used to look for five in a row.
+ *
+ * The board also counts the symbols of each player in every window of five squares in a row. A window
+ * without any symbol of the opponent is "live" for a player, since the player can still get five in a row
+ * there. Only the windows through the changed square are updated by make() and unmake(), so the number of
+ * live windows of both players, and thus whether the game is a tie, is always known. The same updates keep
+ * the score of the position according to ScoreEvaluation.windowScore, see "Position score" in ScoreEvaluation.
+ *
+ * Finally, the board can keep a set of candidate moves: the empty squares within a given radius of a symbol.
+ * Each square counts the symbols within the radius, so making or unmaking a move only touches the squares
+ * around it, and the search can list its children from the set instead of scanning the whole grid.
+ *
+ * Squares are identified by packed indices: square = y * size + x.
+ */
+
+public class Board {
+
+    private static final long ZOBRIST_SEED = 0x5DEECE66DL;
+
+    private final int size;
+    private final char[][] grid;
+    private final BitBoard bits;
+    /**
+     * One random key per player and square. The Zobrist key of a game position is the XOR of the keys of
+     * all occupied squares, so it can be updated with a single XOR whenever a move is made or unmade.
+     */
+    private final long[][] zobrist;
+    private long hash;
+    private final int[][] windows; // Windows of five squares in a row that contain each square
+    private final byte[] countX; // Symbols of 'X' in each window
+    private final byte[] countO; // Symbols of 'O' in each window
+    private final int numOfWindows;
+    private int liveWindowsX; // Windows with no 'O'
+    private int liveWindowsO; // Windows with no 'X'
+    private long scoreX; // Sum of windowScore over the live windows of 'X'
+    private long scoreO; // Sum of windowScore over the live windows of 'O'
+    private int candidateRadius; // 0 if no candidate moves are kept
+    private final int[] nearbySymbols; // Symbols within candidateRadius of each square
+    private final int[] candidates; // Empty squares with nearbySymbols > 0, in no particular order
+    private final int[] candidateIdx; // Index of each square in candidates, or -1
+    private int numOfCandidates;
+    private int numOfSymbols;
+
+    public Board(int size) {
+        this.size = size;
+        grid = new char[size][size];
+        bits = new BitBoard(size);
+        zobrist = new long[2][size * size];
+        Random zobristRand = new Random(ZOBRIST_SEED); // Fixed seed, so keys are the same in every game
+        for (int i=0; i<size*size; i++) {
+            zobrist[0][i] = zobristRand.nextLong();
+            zobrist[1][i] = zobristRand.nextLong();
+        }
+        for (int y=0; y<size; y++) {
+            for (int x=0; x<size; x++) {
+                grid[y][x] = '*';
+            }
+        }
+        windows = findWindows(size);
+        int maxWindow = -1;
+        for (int[] squareWindows : windows) {
+            for (int window : squareWindows) maxWindow = Math.max(maxWindow, window);
+        }
+        numOfWindows = maxWindow + 1;
+        countX = new byte[numOfWindows];
+        countO = new byte[numOfWindows];
+        liveWindowsX = numOfWindows;
+        liveWindowsO = numOfWindows;
+        nearbySymbols = new int[size * size];
+        candidates = new int[size * size];
+        candidateIdx = new int[size * size];
+        Arrays.fill(candidateIdx, -1);
+    }
+
+    /**
+     * Number all windows of five squares in a row on a grid of the given size, in all four directions.
+     * @return for each packed square index, the numbers of the windows that contain the square.
+     */
+    private static int[][] findWindows(int size) {
+        int[][] directions = {{1, 0}, {0, 1}, {1, 1}, {-1, 1}};
+        int[] windowsPerSquare = new int[size * size];
+        int[][] windows = new int[size * size][];
+        // First pass counts the windows of each square, second pass fills them in
+        for (int pass=0; pass<2; pass++) {
+            int window = 0;
+            for (int[] d : directions) {
+                for (int y=0; y<size; y++) {
+                    for (int x=0; x<size; x++) {
+                        int endX = x + 4*d[0], endY = y + 4*d[1];
+                        if (endX < 0 || endX >= size || endY >= size) continue;
+                        for (int i=0; i<5; i++) {
+                            int square = (y + i*d[1])*size + x + i*d[0];
+                            if (pass == 0) windowsPerSquare[square]++;
+                            else windows[square][--windowsPerSquare[square]] = window;
+                        }
+                        window++;
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int square=0; square<size*size; square++) windows[square] = new int[windowsPerSquare[square]];
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * Replace the position on the board with a copy of grid.
+     * @param grid the game position to copy.
+     */
+    public void load(char[][] grid) {
+        hash = 0;
+        Arrays.fill(countX, (byte) 0);
+        Arrays.fill(countO, (byte) 0);
+        liveWindowsX = numOfWindows;
+        liveWindowsO = numOfWindows;
+        scoreX = 0;
+        scoreO = 0;
+        numOfSymbols = 0;
+        for (int y=0; y<size; y++) {
+            for (int x=0; x<size; x++) {
+                this.grid[y][x] = grid[y][x];
+                bits.clear(x, y);
+                if (grid[y][x] != '*') {
+                    bits.set(x, y, grid[y][x]);
+                    hash ^= zobrist[playerIdx(grid[y][x])][y*size + x];
+                    addToWindows(y*size + x, grid[y][x]);
+                    numOfSymbols++;
+                }
+            }
+        }
+        findCandidates();
+    }
+
+    /**
+     * Keep the empty squares within radius of a symbol (horizontally, vertically or diagonally) as candidate
+     * moves, see getCandidates().
+     * @param radius the maximum distance to a symbol, or 0 to stop keeping candidate moves.
+     */
+    public void setCandidateRadius(int radius) {
+        candidateRadius = radius;
+        findCandidates();
+    }
+
+    /**
+     * Rebuild the candidate moves from scratch.
+     */
+    private void findCandidates() {
+        Arrays.fill(nearbySymbols, 0);
+        Arrays.fill(candidateIdx, -1);
+        numOfCandidates = 0;
+        if (candidateRadius == 0) return;
+        for (int square=0; square<size*size; square++) {
+            if (grid[square / size][square % size] != '*') addNearbySymbol(square);
+        }
+    }
+
+    /**
+     * Place a symbol on an empty square.
+     * @param square the packed index of the square.
+     * @param player 'X' or 'O'.
+     */
+    public void make(int square, char player) {
+        grid[square / size][square % size] = player;
+        if (candidateRadius > 0) {
+            removeCandidate(square);
+            addNearbySymbol(square);
+        }
+        bits.set(square % size, square / size, player);
+        hash ^= zobrist[playerIdx(player)][square];
+        addToWindows(square, player);
+        numOfSymbols++;
+    }
+
+    /**
+     * Take back the move at square, restoring the position from before make() was called.
+     * @param square the packed index of the square.
+     */
+    public void unmake(int square) {
+        char player = grid[square / size][square % size];
+        grid[square / size][square % size] = '*';
+        bits.clear(square % size, square / size);
+        hash ^= zobrist[playerIdx(player)][square];
+        removeFromWindows(square, player);
+        numOfSymbols--;
+        if (candidateRadius > 0) {
+            removeNearbySymbol(square);
+            if (nearbySymbols[square] > 0) addCandidate(square);
+        }
+    }
+
+    private void addNearbySymbol(int square) {
+        int x0 = square % size, y0 = square / size;
+        for (int y=Math.max(y0 - candidateRadius, 0); y<=Math.min(y0 + candidateRadius, size-1); y++) {
+            for (int x=Math.max(x0 - candidateRadius, 0); x<=Math.min(x0 + candidateRadius, size-1); x++) {
+                if (nearbySymbols[y*size + x]++ == 0 && grid[y][x] == '*') addCandidate(y*size + x);
+            }
+        }
+    }
+
+    private void removeNearbySymbol(int square) {
+        int x0 = square % size, y0 = square / size;
+        for (int y=Math.max(y0 - candidateRadius, 0); y<=Math.min(y0 + candidateRadius, size-1); y++) {
+            for (int x=Math.max(x0 - candidateRadius, 0); x<=Math.min(x0 + candidateRadius, size-1); x++) {
+                if (--nearbySymbols[y*size + x] == 0) removeCandidate(y*size + x);
+            }
+        }
+    }
+
+    private void addCandidate(int square) {
+        if (candidateIdx[square] >= 0) return;
+        candidateIdx[square] = numOfCandidates;
+        candidates[numOfCandidates++] = square;
+    }
+
+    private void removeCandidate(int square) {
+        int idx = candidateIdx[square];
+        if (idx < 0) return;
+        // Move the last candidate into the hole
+        int last = candidates[--numOfCandidates];
+        candidates[idx] = last;
+        candidateIdx[last] = idx;
+        candidateIdx[square] = -1;
+    }
+
+    private void addToWindows(int square, char player) {
+        long[] windowScore = ScoreEvaluation.windowScore;
+        if (player == 'X') {
+            for (int window : windows[square]) {
+                int x = countX[window]++, o = countO[window];
+                if (o == 0) scoreX += windowScore[x + 1] - windowScore[x];
+                if (x == 0) {
+                    liveWindowsO--;
+                    scoreO -= windowScore[o];
+                }
+            }
+        } else {
+            for (int window : windows[square]) {
+                int o = countO[window]++, x = countX[window];
+                if (x == 0) scoreO += windowScore[o + 1] - windowScore[o];
+                if (o == 0) {
+                    liveWindowsX--;
+                    scoreX -= windowScore[x];
+                }
+            }
+        }
+    }
+
+    private void removeFromWindows(int square, char player) {
+        long[] windowScore = ScoreEvaluation.windowScore;
+        if (player == 'X') {
+            for (int window : windows[square]) {
+                int x = --countX[window], o = countO[window];
+                if (o == 0) scoreX -= windowScore[x + 1] - windowScore[x];
+                if (x == 0) {
+                    liveWindowsO++;
+                    scoreO += windowScore[o];
+                }
+            }
+        } else {
+            for (int window : windows[square]) {
+                int o = --countO[window], x = countX[window];
+                if (x == 0) scoreO -= windowScore[o + 1] - windowScore[o];
+                if (o == 0) {
+                    liveWindowsX++;
+                    scoreX += windowScore[x];
+                }
+            }
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of empty squares, i.e. the moves that are left before the grid is full.
+     */
+    public int getEmptySquares() {
+        return size*size - numOfSymbols;
+    }
+
+    /**
+     * @return the grid of the board. It changes as moves are made and unmade, and must not be modified.
+     */
+    public char[][] getGrid() {
+        return grid;
+    }
+
+    /**
+     * Check if player has five in a row anywhere on the board.
+     */
+    public boolean hasFive(char player) {
+        return bits.hasFive(player);
+    }
+
+    /**
+     * Check if the symbol at square is part of five in a row, looking only at the lines through square.
+     * @param square the packed index of a non-empty square, typically the last move.
+     */
+    public boolean hasFiveThrough(int square) {
+        int x = square % size, y = square / size;
+        return bits.hasFiveThrough(x, y, grid[y][x]);
+    }
+
+    /**
+     * Copy the candidate moves, see setCandidateRadius(), to dst in increasing order of square index. The
+     * set itself has no order that survives making and unmaking moves, so it is sorted to list the children
+     * of a position the same way no matter how the position was reached.
+     * @param dst array of at least size * size elements.
+     * @return the number of candidate moves.
+     */
+    public int getCandidates(int[] dst) {
+        System.arraycopy(candidates, 0, dst, 0, numOfCandidates);
+        Arrays.sort(dst, 0, numOfCandidates);
+        return numOfCandidates;
+    }
+
+    /**
+     * Check if player would get five in a row by playing square.
+     * @param square the packed index of the square.
+     */
+    public boolean isWinningSquare(int square, char player) {
+        int x = square % size, y = square / size;
+        return grid[y][x] == '*' && bits.hasFiveThrough(x, y, player);
+    }
+
+    /**
+     * @return the largest number of symbols of player in a window of five through square that has no
+     * symbol of the opponent, or -1 if every window through square holds a symbol of the opponent.
+     */
+    public int getMostInWindow(int square, char player) {
+        byte[] own = (player == 'X') ? countX : countO;
+        byte[] opponent = (player == 'X') ? countO : countX;
+        int most = -1;
+        for (int window : windows[square]) {
+            if (opponent[window] == 0 && own[window] > most) most = own[window];
+        }
+        return most;
+    }
+
+    /**
+     * Find all blank squares where player would get five in a row.
+     * @param squares receives the packed indices of the squares.
+     * @return the number of squares found.
+     */
+    public int winningSquares(char player, int[] squares) {
+        return bits.winningSquares(player, squares);
+    }
+
+    /**
+     * @return the number of windows of five squares in a row that contain no symbol of the opponent.
+     */
+    public int getLiveWindows(char player) {
+        return (player == 'X') ? liveWindowsX : liveWindowsO;
+    }
+
+    /**
+     * @return the score of the position, positive if it favours 'X' and negative if it favours 'O'.
+     */
+    public float getScore() {
+        return (float) (scoreX - scoreO);
+    }
+
+    /**
+     * The game is a tie when neither player has a live window left.
+     */
+    public boolean isTie() {
+        return liveWindowsX == 0 && liveWindowsO == 0;
+    }
+
+    /**
+     * @return the Zobrist key of the current position.
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * @return the Zobrist key of the current position mapped by symmetry (see Symmetry), computed from
+     * scratch. getHash(0) == getHash().
+     */
+    public long getHash(int symmetry) {
+        long key = 0;
+        for (int y=0; y<size; y++) {
+            for (int x=0; x<size; x++) {
+                if (grid[y][x] == '*') continue;
+                key ^= zobrist[playerIdx(grid[y][x])][Symmetry.apply(y*size + x, symmetry, size)];
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Choose one of the eight mirror images of the current position to stand for all of them: the one with
+     * the smallest Zobrist key. Equivalent positions thus get the same canonical key, getHash(symmetry).
+     * @return the symmetry that maps the current position to its canonical image.
+     */
+    public int getCanonicalSymmetry() {
+        int canonical = 0;
+        long smallest = hash;
+        for (int symmetry=1; symmetry<Symmetry.COUNT; symmetry++) {
+            long key = getHash(symmetry);
+            if (key < smallest) {
+                smallest = key;
+                canonical = symmetry;
+            }
+        }
+        return canonical;
+    }
+
+    private static int playerIdx(char player) {
+        return (player == 'X') ? 0 : 1;
+    }
+}
@@ -0,0 +1,51 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event for each move that the computer looks for (see Grid.newComputerMove() and
+ * Grid.bestMove()), from the start of the search until the move is known. Like every JFR event, it costs
+ * next to nothing while no recording is running: the search only fills in the fields if shouldCommit().
+ *
+ * Record a game with e.g. java -XX:StartFlightRecording=filename=game.jfr Main, and open the file in JDK
+ * Mission Control, or print the events with jfr print --events fiveinarow.ComputerMove game.jfr.
+ */
+
+@Name("fiveinarow.ComputerMove")
+@Label("Computer Move")
+@Category("Five in a Row")
+@Description("Search for the move of the computer")
+public class ComputerMoveEvent extends jdk.jfr.Event {
+
+    @Label("Board Size")
+    int boardSize;
+
+    @Label("Ply")
+    @Description("Moves made before the move that was searched")
+    int ply;
+
+    @Label("Depth")
+    @Description("Depth of the deepest completed iteration, or 0 if the move was not searched")
+    int depth;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Score")
+    @Description("Minimax score of the move, positive if it favours 'X'")
+    float score;
+
+    @Label("Move X")
+    int moveX;
+
+    @Label("Move Y")
+    int moveY;
+
+    @Label("Source")
+    @Description("Search, book, forced win or pondered")
+    String source;
+
+    @Label("Threads")
+    int threads;
+}
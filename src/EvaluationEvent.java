@@ -0,0 +1,40 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event for a sample of the calls to ScoreEvaluation.goalFunction() by the search (one
+ * in Grid.EVALUATION_SAMPLE_INTERVAL leaf evaluations), to see which positions take long to score. It is
+ * disabled by default, even in recordings; enable it with e.g.
+ * java -XX:StartFlightRecording=filename=game.jfr,+fiveinarow.Evaluation#enabled=true Main
+ * While it is disabled, a sampled leaf costs one extra check of whether it is enabled.
+ */
+
+@Name("fiveinarow.Evaluation")
+@Label("Leaf Evaluation")
+@Category("Five in a Row")
+@Description("A sampled call of the goal function")
+@Enabled(false)
+public class EvaluationEvent extends jdk.jfr.Event {
+
+    @Label("Board Size")
+    int boardSize;
+
+    @Label("Depth")
+    @Description("Plies from the root of the search to the leaf")
+    int depth;
+
+    @Label("X")
+    int x;
+
+    @Label("Y")
+    int y;
+
+    @Label("Player")
+    String player;
+
+    @Label("Score")
+    float score;
+}
@@ -0,0 +1,90 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only file of finished games, as written by SelfPlay.
+ *
+ * Each game is one record: the grid size (1 byte), the outcome (1 byte), the number of random opening moves
+ * (1 byte), the number of moves (2 bytes) and the moves in the order they were played, as packed square
+ * indices y * size + x. A move takes 1 byte on grids of up to 16 x 16 and 2 bytes on larger grids, so a game
+ * on a 15 x 15 grid takes 5 bytes plus one per move. Records have no header or index, so games can be
+ * appended to an existing file, and a file that was cut off while writing still reads up to its last
+ * complete game.
+ */
+
+public class GameCorpus {
+
+    // Outcomes
+    public static final int TIE = 0;
+    public static final int X_WINS = 1;
+    public static final int O_WINS = 2;
+
+    public static class Game {
+        public final int size;
+        public final int outcome;
+        public final int randomMoves; // The first moves were random, see SelfPlay
+        public final int[] moves;
+        public Game(int size, int outcome, int randomMoves, int[] moves) {
+            this.size = size;
+            this.outcome = outcome;
+            this.randomMoves = randomMoves;
+            this.moves = moves;
+        }
+    }
+
+    private final DataOutputStream out;
+
+    /**
+     * Open file for appending, creating it if it does not exist.
+     */
+    public GameCorpus(String file) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    }
+
+    /**
+     * Append a game. Can be called by several threads; each game is written as a whole.
+     */
+    public synchronized void append(Game game) throws IOException {
+        out.writeByte(game.size);
+        out.writeByte(game.outcome);
+        out.writeByte(game.randomMoves);
+        out.writeShort(game.moves.length);
+        for (int move : game.moves) {
+            if (game.size * game.size <= 256) out.writeByte(move);
+            else out.writeShort(move);
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Read every complete game in file.
+     */
+    public static List<Game> read(String file) throws IOException {
+        List<Game> games = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int size = in.readUnsignedByte();
+                int outcome = in.readUnsignedByte();
+                int randomMoves = in.readUnsignedByte();
+                int[] moves = new int[in.readUnsignedShort()];
+                for (int i=0; i<moves.length; i++) {
+                    moves[i] = (size * size <= 256) ? in.readUnsignedByte() : in.readUnsignedShort();
+                }
+                games.add(new Game(size, outcome, randomMoves, moves));
+            }
+        } catch (EOFException e) {
+            return games; // The end of the file, or of the last complete game
+        }
+    }
+}
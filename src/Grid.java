@@ -1,35 +1,115 @@
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Grid {
     private final int files; // x
     private final int ranks; // y
-    private class GamePos {
-        char[][] grid;
-        public GamePos(int size) {
-            this.grid = new char[size][size];
-        }
-    }
-    private GamePos[] mGamePos;
+    /**
+     * The game history: moves[mPly] is the move made at ply mPly, as a packed square index, or -1. Only the
+     * current game position is kept, on board; the position after any earlier move is rebuilt on demand
+     * from startPosition, see positionAt().
+     */
+    private short[] moves;
+    private BitBoard startPosition; // The position before the move at startPly, see setGrid()
+    private int startPly; // The first ply in moves, 0 unless the position was set with setGrid()
     private class Move {
         /**
          * One-way tree structure; parents knows the index of its children, but no child knows the index
-         * of its parent.
+         * of its parent. Children are packed square indices y * files + x.
          */
-        int[][] child;
+        int[] child;
         int numOfChildren;
         int selectedChild; // Selected by Minimax
         int tmpSelectChild;
+        long[] sortKey; // Used by orderChildren()
         public Move(int maxNumOfChildren) {
             this.numOfChildren = 0;
-            this.child = new int[maxNumOfChildren][2];
+            this.child = new int[maxNumOfChildren];
+            this.sortKey = new long[maxNumOfChildren];
         }
     }
-    private Move[] mMove;
+    private Move[] mMove; // Allocated once per ply and reused by every search
+    private final Board board; // The current game position. The search makes and unmakes moves on it
+    private int boardPly; // The ply of the game position on board, i.e. board matches positionAt(boardPly)
     private int ply;
+    private static final int DEFAULT_TRANSPOSITION_TABLE_SIZE = 1 << 16;
+    static final int EVALUATION_SAMPLE_INTERVAL = 1024; // Leaf evaluations per EvaluationEvent, a power of 2
+    private static final float MAX_ASPIRATION_WINDOW = 1e12f; // Wider than the range of all scores, see rootSearch()
     private final int maxPly;
-    private final int minimaxDepth;
+    private int minimaxDepth; // Search depth without a time limit, replaced by bestMove()
+    private boolean alphaBeta; // Prune refuted subtrees, see alphaBeta()
+    private boolean incrementalEvaluation; // Score leaves with the position score kept by board
+    private int candidateRadius; // If > 0, only empty squares this close to a symbol are searched
+    private long nodesVisited; // Reset by each call to newComputerMove()
+    private long leafEvaluations; // Leaves scored by evaluateLeaf(), reset by each call to newComputerMove()
+    private long interiorNodes; // Nodes whose children were generated, see findChildren()
+    private long childrenGenerated;
+    private long transpositionProbes;
+    private long transpositionMisses;
+    private long allocatedBytes; // Allocated by the threads of the workers while they searched, see SearchStats
+    private long betaCutoffs; // Reset by each call to newComputerMove()
+    private long transpositionHits; // Reset by each call to newComputerMove()
+    private long firstChildCutoffs; // Beta cutoffs caused by the first child searched
+    private boolean moveOrdering; // Order the children in alphaBeta(), see orderChildren()
+    private final int[][] killers; // Two killer moves per ply, as packed square indices or -1
+    private final int[] history; // History score of each square, see orderChildren()
+    private long timeLimit; // Milliseconds per computer move. If 0, search to minimaxDepth instead
+    private long deadline; // Wall-clock time at which the current search is aborted, or 0 for no deadline
+    private boolean searchAborted;
+    private int rootFirstMove; // Searched first at the root, as a packed square index y * files + x, or -1
+    private TranspositionTable transpositionTable; // Allocated by the first alpha-beta search, or null
+    private int transpositionTableSize;
+    private ThreatSolver threatSolver; // Looks for forced wins before the search, or null if switched off
+    private final boolean[] defensiveMove; // Moves that stop a forced win of the opponent, see findDefensiveMoves()
+    private boolean restrictRoot; // If true, only the defensive moves are searched at the root
+    private int threads; // Threads that search the children of the root, see setThreads()
+    private ForkJoinPool pool; // Runs the workers if threads > 1
+    private final List<Grid> workers; // Searches that run on the pool, each with a board of its own
+    private final ConcurrentLinkedQueue<Grid> idleWorkers;
+    private boolean lazySmp; // Use the threads for Lazy SMP instead of splitting the root, see lazySmpSearch()
+    private volatile boolean stopped; // Set to stop a Lazy SMP worker
+    private int rootShift; // Lazy SMP workers rotate the children of the root by this much
+    private boolean principalVariationSearch; // Search all but the first child with a null window, see alphaBeta()
+    private float aspirationWindow; // Half the width of the root window around the previous score, or 0
+    /**
+     * Triangular array of principal variations: pv[mPly] holds the best line found from the node at mPly,
+     * pvLength[mPly] moves long, as packed square indices. The line of a node is its best child followed by
+     * the line of that child, which is in pv[mPly + 1] right after the child has been searched. Like mMove,
+     * each line is allocated the first time its ply is searched, see pvLine().
+     */
+    private final int[][] pv;
+    private final int[] pvLength;
+    private int[] principalVariation; // The principal variation of the last completed iteration
+    private int predictedMove; // The reply of the player in the principal variation of the last computer move
+    private boolean pondering; // Search the predicted position while the player thinks, see startPondering()
+    private Grid ponderer; // Searches the predicted position on the ponder thread
+    private Thread ponderThread;
+    private int ponderedMove; // The player's move that was pondered on, or -1
+    // Result of the deepest completed iteration of the ponder search, written by the ponder thread
+    private volatile int ponderDepth;
+    private volatile int ponderBestMove;
+    private volatile float ponderScore;
+    private volatile int[] ponderPv;
+    private volatile int ponderPredictedMove;
+    private volatile boolean ponderForcedWin; // The ponder search found a forced win, see ponder()
+    private OpeningBook openingBook; // Searched opening positions, or null, see findBookMove()
+    private int bookVisits; // Visits of the position of the last book move
+    private int rootChildIdx; // Index of the selected child of the root in the last search
+    private final long[] iterationTimes; // Milliseconds that each iteration of the last search took
+    private int numOfIterations;
+    private SearchStats searchStats; // Of the last search
+    private boolean colorsSwapped; // The last position searched by bestMove() had 'X' to move
+    private int symmetryPlies; // Plies from the root at which mirror images are pruned, see setSymmetryPruning()
+    private final int[] symmetries; // Symmetries of the position at a node, see pruneSymmetricChildren()
     Scanner scanner;
     Random rand;
 
@@ -38,18 +118,37 @@ public class Grid {
         this.ranks = size;
         maxPly = size * size; // Cannot be more moves than there are squares
         this.minimaxDepth = minimaxDepth;
-        mGamePos = new GamePos[maxPly]; // Each obj in mGamePos is only declared, not initialized yet
-        mMove = new Move[maxPly]; // Each obj in mMove is only declared, not initialized yet
+        int plies = maxPly + 1; // bestMove() may put the root one ply past the symbols on the grid, see there
+        moves = new short[plies];
+        Arrays.fill(moves, (short) -1);
+        startPosition = new BitBoard(size);
+        mMove = new Move[plies]; // Each obj in mMove is only declared, not initialized yet
+        killers = new int[plies][2];
+        history = new int[files * ranks];
+        defensiveMove = new boolean[files * ranks];
+        symmetries = new int[Symmetry.COUNT];
+        iterationTimes = new long[plies + 1];
+        principalVariation = new int[0];
+        pv = new int[plies + 1][];
+        pvLength = new int[plies + 1];
+        threads = 1;
+        predictedMove = -1;
+        ponderedMove = -1;
+        workers = new ArrayList<>();
+        idleWorkers = new ConcurrentLinkedQueue<>();
         ply = 0;
-        scanner = new Scanner(System.in);
         rand = new Random();
-        // Initialize the first grid
-        mGamePos[ply] = new GamePos(size); // ply = 0
-        for (int y=0; y<ranks; y++) {
-            for (int x=0; x<files; x++) {
-                mGamePos[ply].grid[y][x] = '*';
-            }
-        }
+        board = new Board(size);
+        transpositionTableSize = DEFAULT_TRANSPOSITION_TABLE_SIZE;
+    }
+
+    /**
+     * Create a worker for the parallel search of parent, see setThreads(). The worker shares the game
+     * history of parent but has its own board, children, killer moves, history and transposition table.
+     */
+    private Grid(Grid parent) {
+        this(parent.files, parent.minimaxDepth);
+        moves = parent.moves;
     }
 
     // ----- Getters and setters (for testing purposes) -----
@@ -62,26 +161,256 @@ public class Grid {
         return ply;
     }
 
+    /**
+     * Set the game position after the move at ply. The moves that led to it are unknown, so the game
+     * history starts over from grid: earlier positions can no longer be rebuilt, see positionAt().
+     */
     public void setGrid(char[][] grid) {
-        mGamePos[ply] = new GamePos(grid.length);
-        mGamePos[ply].grid = grid;
+        startPosition = BitBoard.fromGrid(grid);
+        startPly = ply + 1;
+        board.load(grid);
+        boardPly = ply;
     }
 
+    /**
+     * @return a copy of the game position at mPly.
+     */
     public char[][] getGrid(int mPly) {
-        return mGamePos[mPly].grid;
+        return positionAt(mPly).toGrid();
+    }
+
+    public void setAlphaBeta(boolean alphaBeta) {
+        this.alphaBeta = alphaBeta;
+    }
+
+    /**
+     * Choose how leaf nodes are scored: by ScoreEvaluation.goalFunction() for the move that led to the leaf,
+     * or by the score of the whole position that board keeps up to date (see "Position score" in
+     * ScoreEvaluation), which costs O(1) per leaf.
+     */
+    public void setIncrementalEvaluation(boolean incrementalEvaluation) {
+        this.incrementalEvaluation = incrementalEvaluation;
+    }
+
+    /**
+     * Only search moves within radius of a symbol already on the grid, horizontally, vertically or
+     * diagonally. Board keeps these candidate moves up to date as moves are made, see Board.
+     * @param radius the maximum distance to a symbol, or 0 to search every empty square.
+     */
+    public void setCandidateRadius(int radius) {
+        candidateRadius = radius;
+        board.setCandidateRadius(radius);
+    }
+
+    /**
+     * Let alphaBeta() search the most promising children first, which makes cutoffs happen earlier: the
+     * best child stored in the transposition table, then the killer moves of the ply, then the rest by
+     * history score. See orderChildren().
+     */
+    public void setMoveOrdering(boolean moveOrdering) {
+        this.moveOrdering = moveOrdering;
+    }
+
+    public long getNodesVisited() {
+        return nodesVisited;
+    }
+
+    /**
+     * @return the leaf nodes that the last search scored, which together with getNodesVisited() tells whether
+     * a change to the search changed the tree it searches, see Bench.
+     */
+    public long getLeafEvaluations() {
+        return leafEvaluations;
+    }
+
+    public long getBetaCutoffs() {
+        return betaCutoffs;
+    }
+
+    /**
+     * Let newComputerMove() use iterative deepening instead of a fixed search depth: the position is
+     * searched to depth 1, 2, 3, ... until the time limit is reached.
+     * @param timeLimit milliseconds per computer move, or 0 to always search to minimaxDepth.
+     */
+    public void setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    public long getTranspositionHits() {
+        return transpositionHits;
+    }
+
+    /**
+     * @return the share of beta cutoffs in the last search that were caused by the first child searched,
+     * which measures how good the move ordering is.
+     */
+    public double getFirstChildCutoffRate() {
+        return (betaCutoffs == 0) ? 0 : (double) firstChildCutoffs / betaCutoffs;
+    }
+
+    /**
+     * @return the statistics of the last search, or null before the first search.
+     */
+    public SearchStats getSearchStats() {
+        return searchStats;
+    }
+
+    /**
+     * Replace the transposition table used by alphaBeta() with an empty one, which is allocated when the next
+     * alpha-beta search starts, see allocateTranspositionTable().
+     * @param size the number of entries, see TranspositionTable.
+     */
+    public void setTranspositionTableSize(int size) {
+        transpositionTableSize = size;
+        transpositionTable = null;
+    }
+
+    /**
+     * Allocate the transposition table if an alpha-beta search is about to need it. A grid that is only used
+     * to keep a game, or only searches with minimax, never allocates one, which matters when one process
+     * hosts many games.
+     */
+    private void allocateTranspositionTable() {
+        if (alphaBeta && transpositionTable == null) {
+            transpositionTable = new TranspositionTable(transpositionTableSize);
+        }
+    }
+
+    /**
+     * Forget what earlier searches learned: empty the transposition table without reallocating it, and clear
+     * the killer moves and the history of move ordering, which are otherwise carried over from one search to
+     * the next. A search can then be repeated from scratch, e.g. by a benchmark.
+     */
+    public void clearSearchState() {
+        if (transpositionTable != null) transpositionTable.clear();
+        for (int[] killer : killers) Arrays.fill(killer, -1);
+        Arrays.fill(history, 0);
+        for (Grid worker : workers) worker.clearSearchState();
+    }
+
+    /**
+     * Let newComputerMove() run a threat space search (see ThreatSolver) before the minimax search. A forced
+     * win for the computer is played at once, and if the player would have a forced win, only the moves that
+     * stop it are searched.
+     * @param nodeBudget the maximum number of nodes for each threat space search, or 0 to switch it off.
+     */
+    public void setThreatSearch(long nodeBudget) {
+        threatSolver = (nodeBudget > 0) ? new ThreatSolver(board, nodeBudget) : null;
+    }
+
+    /**
+     * Search the children of the root in parallel. The first child is searched alone and the rest are
+     * shared among threads workers, see parallelSearch().
+     * @param threads the number of threads, or 1 to search on the calling thread only.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+        if (pool != null) pool.shutdown();
+        pool = (threads > 1) ? new ForkJoinPool(threads) : null;
+        workers.clear();
+        idleWorkers.clear();
+        for (int i=0; i<threads && threads>1; i++) {
+            workers.add(new Grid(this));
+        }
+        idleWorkers.addAll(workers);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Let the computer think on the player's time: while newPlayerMove() waits for input, a background
+     * thread searches the position after the reply that the last search predicted. If the player makes that
+     * move, newComputerMove() plays the result at once if the ponder search reached minimaxDepth, and
+     * otherwise, or with a time limit, goes on searching from it until the depth or the deadline is reached.
+     * If the player makes another move, the search is stopped, and what it stored in the transposition table
+     * is still there for the next search. Off by default.
+     */
+    public void setPondering(boolean pondering) {
+        if (!pondering) stopPondering();
+        this.pondering = pondering;
+    }
+
+    /**
+     * Let alphaBeta() search every child but the first with a null window, which only tells whether the child
+     * is better than the best child so far. Since the first child usually is the best one after move
+     * ordering, this is cheaper than a search with the full window, and the rare child that turns out to be
+     * better is searched again with the full window.
+     */
+    public void setPrincipalVariationSearch(boolean principalVariationSearch) {
+        this.principalVariationSearch = principalVariationSearch;
+    }
+
+    /**
+     * Let each iteration of alphaBeta() after the first search the root with a window around the score of the
+     * previous iteration, see rootSearch().
+     * @param aspirationWindow half the width of the window, or 0 to always search with the full window.
+     */
+    public void setAspirationWindow(float aspirationWindow) {
+        this.aspirationWindow = aspirationWindow;
+    }
+
+    /**
+     * Let the threads (see setThreads()) run a Lazy SMP search instead of splitting the children of the root:
+     * every thread searches the whole root, and they share results through the transposition table.
+     * Only used by alpha-beta.
+     */
+    public void setLazySmp(boolean lazySmp) {
+        this.lazySmp = lazySmp;
+    }
+
+    /**
+     * Let newComputerMove() look the position up in an opening book before it searches, and play the move
+     * of the book if the position is there.
+     * @param openingBook a book built for grids of this size, or null to stop using a book.
+     */
+    public void setOpeningBook(OpeningBook openingBook) {
+        if (openingBook != null && openingBook.getSize() != files) {
+            throw new IllegalArgumentException("The opening book is for grids of size " + openingBook.getSize());
+        }
+        this.openingBook = openingBook;
+    }
+
+    /**
+     * Early in the game, a position is often its own mirror image, and then many of its children lead to
+     * positions that are mirror images of each other, which all have the same score. Search only one child of
+     * each such group, see pruneSymmetricChildren().
+     *
+     * Mirror images only have the same score if the evaluation is symmetric, which the incremental evaluation
+     * is but ScoreEvaluation.goalFunction() is not (see there), so children are only pruned with
+     * setIncrementalEvaluation(true).
+     * @param plies the number of plies from the root at which to prune, e.g. 1 for the root only, or 0 to
+     * search every child.
+     */
+    public void setSymmetryPruning(int plies) {
+        symmetryPlies = plies;
     }
 
     // ---------- Game mechanics ----------
 
     /**
-     * Copy the game position at mGamePos[mPly] to newGamePos and return newGamePos.
-     * @return a new GamePos object, identical to mGamePos[mPly].
+     * Rebuild the game position after the move at mPly by replaying the moves from startPosition.
+     * @throws IllegalArgumentException if mPly is before the position set with setGrid().
      */
-    private GamePos copyGamePos(int mPly) {
-        GamePos newGamePos = new GamePos(files);
-        for (int y=0; y<ranks; y++)
-            System.arraycopy(mGamePos[mPly].grid[y], 0, newGamePos.grid[y], 0, files);
-        return newGamePos;
+    private BitBoard positionAt(int mPly) {
+        if (mPly < startPly - 1) {
+            throw new IllegalArgumentException("The game position at ply " + mPly + " is unknown, since the " +
+                    "position at ply " + (startPly - 1) + " was set with setGrid()");
+        }
+        BitBoard position = new BitBoard(startPosition);
+        for (int i=startPly; i<=mPly; i++) {
+            if (moves[i] >= 0) position.set(moves[i] % files, moves[i] / files, (i % 2 == 0) ? 'X' : 'O');
+        }
+        return position;
+    }
+
+    /**
+     * @return the move that led to the game position at mPly, as a packed square index, or -1 if it is
+     * unknown because the position was set with setGrid().
+     */
+    private int lastMove(int mPly) {
+        return (mPly >= startPly) ? moves[mPly] : -1;
     }
 
     /**
@@ -91,30 +420,50 @@ public class Grid {
      * @param y the coordinate for the vertical axis.
      */
     private void updateGrid(int mPly, int x, int y) {
-        if (mPly > 0) {
-            // Initialize new grid and copy current game position
-            mGamePos[mPly] = copyGamePos(mPly - 1);
-        }
-        // Update mGamePos[ply].grid with the new move
-        mGamePos[mPly].grid[y][x] = (mPly % 2 == 0) ? 'X' : 'O';
+        char player = (mPly % 2 == 0) ? 'X' : 'O';
+        moves[mPly] = (short) (y*files + x);
+        board.make(y*files + x, player);
+        boardPly = mPly;
     }
 
     private boolean validMove(int x, int y) {
-        if (x < 0 || x > files || y < 0 || y > ranks) {
+        if (x < 0 || x >= files || y < 0 || y >= ranks) {
             return false;
-        } else if (ply == 0) {
-            return true;
         } else {
-            return mGamePos[ply - 1].grid[y][x] == '*';
+            return board.getGrid()[y][x] == '*'; // The board holds the current game position
         }
     }
 
+    /**
+     * Make a move for the player whose turn it is.
+     * @return false if (x, y) is off the grid or taken, in which case nothing changes.
+     */
+    public boolean makeMove(int x, int y) {
+        if (!validMove(x, y)) return false;
+        updateGrid(ply, x, y);
+        ply++;
+        return true;
+    }
+
     /**
      * Let human player make a move.
      */
     public void newPlayerMove() {
-        boolean keepReadingInput = true;
         System.out.println("Your turn!");
+        startPondering();
+        try {
+            readPlayerMove();
+        } finally {
+            stopPondering();
+        }
+    }
+
+    /**
+     * Read the player's move from the console and make it.
+     */
+    private void readPlayerMove() {
+        if (scanner == null) scanner = new Scanner(System.in); // Only games against a person read input
+        boolean keepReadingInput = true;
         int x, y;
         while (keepReadingInput) {
             try {
@@ -132,10 +481,8 @@ public class Grid {
                     System.out.println("y coordinate is out of range");
                     continue;
                 }
-                if (validMove(x, y)) {
+                if (makeMove(x, y)) {
                     System.out.println("\nYou played (" + x + ", " + y + ")");
-                    updateGrid(ply, x, y);
-                    ply++;
                     keepReadingInput = false;
                 } else {
                     System.out.println("Invalid move, try again.");
@@ -148,21 +495,112 @@ public class Grid {
         }
     }
 
+    /**
+     * Start a background search of the position after the predicted move of the player, if pondering is on
+     * and the last computer move predicted one. The search shares the transposition table, and runs until
+     * stopPondering() is called or, without a time limit, until it reaches minimaxDepth. It also runs the
+     * threat space search, so that the computer does not have to after a ponder hit.
+     */
+    private void startPondering() {
+        ponderedMove = -1;
+        if (!pondering || predictedMove < 0 || ply == 0 ||
+                board.getGrid()[predictedMove / files][predictedMove % files] != '*') return;
+        if (ponderer == null) ponderer = new Grid(this);
+        startWorker(ponderer, true);
+        if (threatSolver == null) {
+            ponderer.threatSolver = null;
+        } else if (ponderer.threatSolver == null) {
+            ponderer.threatSolver = new ThreatSolver(ponderer.board, threatSolver.getNodeBudget());
+        } else {
+            ponderer.threatSolver.setNodeBudget(threatSolver.getNodeBudget());
+        }
+        // The ponderer gets its own game history, with the predicted move made
+        ponderer.moves = moves.clone();
+        ponderer.moves[ply] = (short) predictedMove;
+        ponderer.board.make(predictedMove, 'X');
+        // The game would be over
+        if (ponderer.board.hasFiveThrough(predictedMove) || ponderer.board.getEmptySquares() == 0) return;
+        ponderer.ply = ply + 1;
+        ponderer.boardPly = ply;
+        ponderer.deadline = 0;
+        ponderer.rootFirstMove = -1;
+        ponderer.restrictRoot = false;
+        ponderedMove = predictedMove;
+        ponderDepth = 0;
+        ponderForcedWin = false;
+        int squaresLeft = ponderer.board.getEmptySquares();
+        int maxDepth = (timeLimit > 0) ? squaresLeft : Math.min(minimaxDepth, squaresLeft);
+        ponderThread = new Thread(() -> ponderer.ponder(maxDepth, this), "Ponder");
+        ponderThread.setDaemon(true);
+        ponderThread.start();
+    }
+
+    /**
+     * The threat space search and iterative deepening on the ponderer, run by the ponder thread, like
+     * findMove() does. A forced win, or else the result of each completed iteration, is handed to owner.
+     */
+    private void ponder(int maxDepth, Grid owner) {
+        if (threatSolver != null) {
+            int win = threatSolver.findWin('O', true);
+            if (win >= 0) {
+                owner.ponderBestMove = win;
+                owner.ponderScore = -Float.MAX_VALUE;
+                owner.ponderPv = new int[] {win};
+                owner.ponderPredictedMove = -1;
+                owner.ponderForcedWin = true;
+                owner.ponderDepth = maxDepth; // Written last, since it tells that the rest is complete
+                return;
+            }
+            if (threatSolver.findWin('X', true) >= 0) findDefensiveMoves();
+            if (stopped) return; // The defensive moves may be incomplete
+        }
+        for (int depth=1; depth<=maxDepth; depth++) {
+            float eval = alphaBeta
+                    ? alphaBeta(ply, depth, -Float.MAX_VALUE, Float.MAX_VALUE, 'O')
+                    : minimax(ply, depth, 'O');
+            if (searchAborted || mMove[ply].numOfChildren == 0) return;
+            rootFirstMove = mMove[ply].child[mMove[ply].selectedChild];
+            owner.ponderBestMove = rootFirstMove;
+            owner.ponderScore = eval;
+            owner.ponderPv = Arrays.copyOf(pvLine(ply), pvLength[ply]);
+            owner.ponderPredictedMove = (pvLength[ply] > 1) ? pv[ply][1] : -1;
+            owner.ponderDepth = depth; // Written last, since it tells that the rest is complete
+        }
+    }
+
+    /**
+     * Stop the ponder search, if any, and wait for the ponder thread to finish. Called when the player has
+     * moved, and safe to call when the game is over.
+     */
+    public void stopPondering() {
+        if (ponderThread == null) return;
+        ponderer.stopped = true;
+        try {
+            ponderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ponderThread = null;
+    }
+
     /**
      * Let computer make a move based only on randomness.
      */
     public void newRandomComputerMove() {
-        int x, y;
-        boolean keepAsking = true;
-        while (keepAsking) {
-            x = rand.nextInt(files);
-            y = rand.nextInt(ranks);
-            if (validMove(x, y)) {
-                updateGrid(ply, x, y);
-                ply++;
-                System.out.println("Computer played (" + x + ", " + y + ")");
-                keepAsking = false;
-            }
+        int square = makeRandomMove(rand);
+        System.out.println("Computer played (" + square % files + ", " + square / files + ")");
+    }
+
+    /**
+     * Make a random move for the player whose turn it is. The grid must not be full.
+     * @param random the source of the move, e.g. seeded to repeat a game.
+     * @return the packed square index of the move.
+     */
+    public int makeRandomMove(Random random) {
+        while (true) {
+            int x = random.nextInt(files);
+            int y = random.nextInt(ranks);
+            if (makeMove(x, y)) return y*files + x;
         }
     }
 
@@ -173,52 +611,682 @@ public class Grid {
      * to find the optimal move for the computer player.
      */
     public void newComputerMove() {
-        float minimax = minimax(ply, minimaxDepth, 'O');
-        int childIdx = mMove[ply].selectedChild;
-        int x = mMove[ply].child[childIdx][0];
-        int y = mMove[ply].child[childIdx][1];
-        System.out.println("Computer selected child " + childIdx + " with coordinates: (" + x + ", " + y + ")");
-        System.out.println(String.format("Minimax score: %.8f\n", minimax));
+        SearchResult result = search();
+        int x = result.getMove() % files, y = result.getMove() / files;
+        switch (result.getSource()) {
+            case SearchResult.FORCED_WIN:
+                System.out.println("Computer found a forced win with coordinates: (" + x + ", " + y + ")");
+                System.out.println("Threat space search: " + result.getNodes() + " nodes\n");
+                break;
+            case SearchResult.BOOK:
+                System.out.println("Computer played a book move with coordinates: (" + x + ", " + y + ")");
+                System.out.println(String.format("Minimax score: %.8f", result.getScore()));
+                System.out.println("Book visits: " + bookVisits + ", time: " + result.getTime() + " ms\n");
+                break;
+            case SearchResult.PONDERED:
+                System.out.println("Computer played the move it pondered on, with coordinates: (" + x + ", " + y +
+                        ")");
+                System.out.println(String.format("Minimax score: %.8f", result.getScore()));
+                System.out.println("Principal variation: " + formatPv(result.getPrincipalVariation()));
+                System.out.println("Search depth: " + result.getDepth() + " (on the player's time), time: " +
+                        result.getTime() + " ms\n");
+                break;
+            default:
+                System.out.println("Computer selected child " + rootChildIdx + " with coordinates: (" + x + ", " + y +
+                        ")");
+                System.out.println(String.format("Minimax score: %.8f", result.getScore()));
+                System.out.println("Principal variation: " + formatPv(result.getPrincipalVariation()));
+                System.out.println("Search stats: " + searchStats + "\n");
+        }
         updateGrid(ply, x, y);
         ply++;
     }
 
+    /**
+     * Find the best move for the computer ('O') in the current game position, without making it and without
+     * any output, so that many games can be played in one process.
+     * @param limits the depth or time to search, which replace those of the constructor and setTimeLimit().
+     */
+    public SearchResult bestMove(SearchLimits limits) {
+        minimaxDepth = limits.getDepth();
+        timeLimit = limits.getTimeLimit();
+        return search();
+    }
+
+    /**
+     * Find the best move in position for the player to move, which is 'X' if both players have the same
+     * number of symbols and 'O' otherwise. position replaces the game position of this grid.
+     *
+     * The search always plays 'O', so for 'X' it searches position with the symbols swapped and negates the
+     * score. Those positions have the same number of symbols of each player, like the positions where 'X' is
+     * to move in every other search, so the transposition table is cleared whenever the player changes. An
+     * engine that always plays the same player keeps its table from move to move.
+     *
+     * 'O' moves at odd plies, so the root is at the ply that equals the number of symbols if 'O' is to move,
+     * and one ply later if 'X' is to move, as if 'X' had passed once. The search depth is limited to the
+     * empty squares either way.
+     * @param limits the depth or time to search, which replace those of the constructor and setTimeLimit().
+     * @throws IllegalArgumentException if position is not a grid of this size with only 'X', 'O' and '*',
+     * if one player has too many symbols, or if the game is already over.
+     */
+    public SearchResult bestMove(char[][] position, SearchLimits limits) {
+        int symbols = checkPosition(position);
+        stopPondering();
+        ponderedMove = -1;
+        boolean swap = (symbols % 2 == 0);
+        if (swap != colorsSwapped) {
+            if (transpositionTable != null) transpositionTable.clear();
+            colorsSwapped = swap;
+        }
+        char[][] grid = position;
+        if (swap) {
+            grid = new char[ranks][files];
+            for (int y=0; y<ranks; y++) {
+                for (int x=0; x<files; x++) {
+                    grid[y][x] = (position[y][x] == 'X') ? 'O' : (position[y][x] == 'O') ? 'X' : '*';
+                }
+            }
+        }
+        // The position is at ply - 1 with an odd ply, so that 'O' is to move
+        ply = swap ? symbols : symbols - 1;
+        setGrid(grid);
+        ply++;
+        SearchResult result = bestMove(limits);
+        if (!swap) return result;
+        return new SearchResult(result.getMove(), -result.getScore(), result.getDepth(), result.getNodes(),
+                result.getTime(), result.getPrincipalVariation(), result.getSource());
+    }
+
+    /**
+     * @return the number of symbols in position, after checking that it is a position bestMove() can search.
+     */
+    private int checkPosition(char[][] position) {
+        if (position.length != ranks) {
+            throw new IllegalArgumentException("The grid has " + position.length + " rows instead of " + ranks);
+        }
+        int symbolsX = 0, symbolsO = 0;
+        for (char[] row : position) {
+            if (row.length != files) {
+                throw new IllegalArgumentException("A row has " + row.length + " squares instead of " + files);
+            }
+            for (char square : row) {
+                if (square == 'X') symbolsX++;
+                else if (square == 'O') symbolsO++;
+                else if (square != '*') throw new IllegalArgumentException("Unknown symbol '" + square + "'");
+            }
+        }
+        if (symbolsX != symbolsO && symbolsX != symbolsO + 1) {
+            throw new IllegalArgumentException("'X' has " + symbolsX + " symbols and 'O' has " + symbolsO +
+                    ", which no game can reach");
+        }
+        if (symbolsX + symbolsO == maxPly) throw new IllegalArgumentException("The grid is full");
+        BitBoard bits = BitBoard.fromGrid(position);
+        if (bits.hasFive('X') || bits.hasFive('O')) {
+            throw new IllegalArgumentException("The game is over, a player has five in a row");
+        }
+        return symbolsX + symbolsO;
+    }
+
+    /**
+     * Find the move of the computer, see findMove(), keep the statistics of the search for getSearchStats()
+     * and record a ComputerMoveEvent.
+     */
+    private SearchResult search() {
+        ComputerMoveEvent event = new ComputerMoveEvent();
+        event.begin();
+        nodesVisited = 0;
+        leafEvaluations = 0;
+        interiorNodes = 0;
+        childrenGenerated = 0;
+        betaCutoffs = 0;
+        transpositionProbes = 0;
+        transpositionHits = 0;
+        transpositionMisses = 0;
+        firstChildCutoffs = 0;
+        allocatedBytes = 0;
+        numOfIterations = 0;
+        long allocationStart = SearchStats.allocatedBytes();
+        SearchResult result = findMove();
+        long allocated = (allocationStart < 0) ? -1 : SearchStats.allocatedBytes() - allocationStart + allocatedBytes;
+        searchStats = new SearchStats(result.getDepth(), threads, result.getTime(), nodesVisited, leafEvaluations,
+                interiorNodes, childrenGenerated, betaCutoffs, firstChildCutoffs, transpositionProbes,
+                transpositionHits, transpositionMisses, Arrays.copyOf(iterationTimes, numOfIterations), allocated);
+        if (event.shouldCommit()) {
+            event.boardSize = files;
+            event.ply = ply;
+            event.depth = result.getDepth();
+            event.nodes = result.getNodes();
+            event.score = result.getScore();
+            event.moveX = result.getMove() % files;
+            event.moveY = result.getMove() / files;
+            event.source = result.getSourceName();
+            event.threads = threads;
+            event.commit();
+        }
+        return result;
+    }
+
+    /**
+     * Find the move of the computer: from the opening book, as a forced win, from the ponder search or by
+     * iterative deepening, in that order. The move is -1 if the grid is full.
+     */
+    private SearchResult findMove() {
+        long start = System.currentTimeMillis();
+        // Killer moves are only relevant for the search they were found in, while history scores fade
+        for (int[] killer : killers) Arrays.fill(killer, -1);
+        for (int i=0; i<history.length; i++) history[i] /= 2;
+        searchAborted = false;
+        restrictRoot = false;
+        predictedMove = -1;
+        int squaresLeft = board.getEmptySquares();
+        if (squaresLeft == 0) {
+            return new SearchResult(-1, 0, 0, 0, System.currentTimeMillis() - start, new int[0], SearchResult.SEARCH);
+        }
+        allocateTranspositionTable();
+        SearchResult bookMove = findBookMove(start);
+        if (bookMove != null) return bookMove;
+        // A ponder hit has already run the threat space search on the player's time
+        SearchResult pondered = findPonderedMove(start);
+        if (pondered != null && (pondered.getSource() == SearchResult.FORCED_WIN ||
+                (timeLimit == 0 && pondered.getDepth() >= minimaxDepth))) {
+            return pondered;
+        }
+        if (pondered == null && threatSolver != null) {
+            int win = threatSolver.findWin('O', true);
+            if (win >= 0) {
+                return new SearchResult(win, -Float.MAX_VALUE, 0, threatSolver.getNodes(),
+                        System.currentTimeMillis() - start, new int[] {win}, SearchResult.FORCED_WIN);
+            }
+            if (threatSolver.findWin('X', true) >= 0) findDefensiveMoves();
+        }
+        deadline = 0; // The first iteration always completes, so that there is a move to play
+        // After a ponder hit that is not deep enough, or with a time limit, the search goes on from the ponder
+        // search: its best move is searched first, and its entries are in the shared transposition table
+        rootFirstMove = (pondered != null) ? pondered.getMove() : -1;
+        // Iterative deepening: each iteration searches the best child of the previous iteration first,
+        // and the search of the deepest iteration is abandoned once the deadline has passed
+        int lastDepth = (timeLimit > 0) ? squaresLeft : Math.min(minimaxDepth, squaresLeft);
+        int firstDepth = (timeLimit > 0) ? 1 : lastDepth;
+        int completedDepth = 0;
+        float minimax = 0;
+        for (Grid worker : workers) startWorker(worker, lazySmp);
+        principalVariation = new int[0];
+        rootChildIdx = 0;
+        for (int depth=firstDepth; depth<=lastDepth; depth++) {
+            long iterationStart = System.currentTimeMillis();
+            long iterationNodes = searchedNodes();
+            IterationEvent iterationEvent = new IterationEvent();
+            iterationEvent.begin();
+            float eval = (threads > 1 && !(lazySmp && alphaBeta)) ? parallelSearch(depth)
+                    : alphaBeta ? rootSearch(depth, minimax, completedDepth > 0)
+                    : minimax(ply, depth, 'O');
+            if (searchAborted) break;
+            completedDepth = depth;
+            principalVariation = Arrays.copyOf(pvLine(ply), pvLength[ply]);
+            predictedMove = (pvLength[ply] > 1) ? pv[ply][1] : -1;
+            iterationTimes[numOfIterations++] = System.currentTimeMillis() - iterationStart;
+            minimax = eval;
+            rootChildIdx = mMove[ply].selectedChild;
+            rootFirstMove = mMove[ply].child[rootChildIdx];
+            if (iterationEvent.shouldCommit()) {
+                iterationEvent.boardSize = files;
+                iterationEvent.ply = ply;
+                iterationEvent.depth = depth;
+                iterationEvent.nodes = searchedNodes() - iterationNodes;
+                iterationEvent.score = eval;
+                iterationEvent.moveX = rootFirstMove % files;
+                iterationEvent.moveY = rootFirstMove / files;
+                iterationEvent.commit();
+            }
+            if (timeLimit > 0) {
+                deadline = start + timeLimit;
+                if (System.currentTimeMillis() >= deadline) break;
+            }
+        }
+        for (Grid worker : workers) {
+            nodesVisited += worker.nodesVisited;
+            leafEvaluations += worker.leafEvaluations;
+            interiorNodes += worker.interiorNodes;
+            childrenGenerated += worker.childrenGenerated;
+            betaCutoffs += worker.betaCutoffs;
+            firstChildCutoffs += worker.firstChildCutoffs;
+            transpositionProbes += worker.transpositionProbes;
+            transpositionHits += worker.transpositionHits;
+            transpositionMisses += worker.transpositionMisses;
+            allocatedBytes += worker.allocatedBytes;
+        }
+        if (pondered != null && completedDepth < pondered.getDepth()) {
+            // The ponder search got deeper than the time left for this search
+            predictedMove = ponderPredictedMove;
+            return new SearchResult(pondered.getMove(), pondered.getScore(), pondered.getDepth(), nodesVisited,
+                    System.currentTimeMillis() - start, pondered.getPrincipalVariation(), SearchResult.PONDERED);
+        }
+        return new SearchResult(rootFirstMove, minimax, completedDepth, nodesVisited,
+                System.currentTimeMillis() - start, principalVariation, SearchResult.SEARCH);
+    }
+
+    /**
+     * @return the nodes visited so far by this search and its workers, whose counts are only added to
+     * nodesVisited when the search is done.
+     */
+    private long searchedNodes() {
+        long nodes = nodesVisited;
+        for (Grid worker : workers) nodes += worker.nodesVisited;
+        return nodes;
+    }
+
+    /**
+     * Prepare worker for the search of the current game position.
+     * @param shareTable true to let worker use the transposition table of this search, false to give it an
+     * empty one of its own.
+     */
+    private void startWorker(Grid worker, boolean shareTable) {
+        worker.ply = ply;
+        worker.boardPly = boardPly;
+        worker.moves = moves;
+        worker.startPly = startPly;
+        worker.startPosition = startPosition;
+        worker.alphaBeta = alphaBeta;
+        worker.incrementalEvaluation = incrementalEvaluation;
+        worker.moveOrdering = moveOrdering;
+        worker.principalVariationSearch = principalVariationSearch;
+        worker.symmetryPlies = symmetryPlies;
+        if (worker.candidateRadius != candidateRadius) worker.setCandidateRadius(candidateRadius);
+        worker.board.load(board.getGrid());
+        worker.nodesVisited = 0;
+        worker.leafEvaluations = 0;
+        worker.interiorNodes = 0;
+        worker.childrenGenerated = 0;
+        worker.betaCutoffs = 0;
+        worker.transpositionProbes = 0;
+        worker.transpositionHits = 0;
+        worker.transpositionMisses = 0;
+        worker.firstChildCutoffs = 0;
+        worker.allocatedBytes = 0;
+        for (int[] killer : worker.killers) Arrays.fill(killer, -1);
+        for (int i=0; i<worker.history.length; i++) worker.history[i] /= 2;
+        worker.searchAborted = false;
+        worker.stopped = false;
+        if (shareTable) {
+            allocateTranspositionTable();
+            worker.transpositionTable = transpositionTable;
+        } else if (alphaBeta) {
+            // Entries from an earlier, deeper search could change the scores, so every move starts afresh
+            if (worker.transpositionTable == null || worker.transpositionTable == transpositionTable) {
+                worker.transpositionTable = new TranspositionTable(DEFAULT_TRANSPOSITION_TABLE_SIZE);
+            }
+            worker.transpositionTable.clear();
+        }
+    }
+
+    /**
+     * Search the root with alphaBeta(), or with lazySmpSearch() if there are several threads. Unless this is
+     * the first iteration, the root is first searched with an aspiration window: aspirationWindow on either
+     * side of the score of the previous iteration, which rarely changes much, so that the narrow window gives
+     * more cutoffs. A score outside the window is only a bound, and then the root is searched again with the
+     * window on that side four times as wide, until the score falls inside the window.
+     * @param depth maximum depth of the decision tree.
+     * @param previous the score of the previous iteration.
+     * @param aspiration true if there was a previous iteration.
+     * @return the score of the optimal child.
+     */
+    private float rootSearch(int depth, float previous, boolean aspiration) {
+        float delta = aspirationWindow;
+        float alpha = -Float.MAX_VALUE, beta = Float.MAX_VALUE;
+        if (aspiration && delta > 0) {
+            alpha = previous - delta;
+            beta = previous + delta;
+        }
+        while (true) {
+            float eval = (threads > 1) ? lazySmpSearch(depth, alpha, beta) : alphaBeta(ply, depth, alpha, beta, 'O');
+            if (searchAborted) return 0; // Result is discarded by newComputerMove()
+            if (eval > alpha && eval < beta) return eval;
+            delta *= 4;
+            if (eval <= alpha) alpha = (delta < MAX_ASPIRATION_WINDOW) ? previous - delta : -Float.MAX_VALUE;
+            else beta = (delta < MAX_ASPIRATION_WINDOW) ? previous + delta : Float.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Lazy SMP version of the root of alphaBeta(). Threads - 1 workers search the same root as the calling
+     * thread, every other one a ply deeper and each with the children of the root in a different order, so
+     * that they tend to search different parts of the tree first. The threads share nothing but the
+     * transposition table: the calling thread searches the root as usual and finds the results of the
+     * workers there, which lets it reach the depth sooner. The workers are stopped once it is done.
+     * @param depth maximum depth of the decision tree.
+     * @param alpha the window of the calling thread, see rootSearch(). The workers use the full window.
+     * @return the score of the optimal child, found by the calling thread.
+     */
+    private float lazySmpSearch(int depth, float alpha, float beta) {
+        List<Future<?>> helpers = new ArrayList<>();
+        for (int i=0; i<threads-1; i++) {
+            Grid worker = workers.get(i);
+            worker.searchAborted = false;
+            worker.stopped = false;
+            worker.deadline = deadline;
+            worker.rootFirstMove = rootFirstMove;
+            worker.rootShift = i + 1;
+            worker.restrictRoot = restrictRoot;
+            System.arraycopy(defensiveMove, 0, worker.defensiveMove, 0, defensiveMove.length);
+            int workerDepth = Math.min(depth + (i + 1) % 2, board.getEmptySquares());
+            helpers.add(pool.submit(() -> {
+                long allocationStart = SearchStats.allocatedBytes();
+                worker.alphaBeta(ply, workerDepth, -Float.MAX_VALUE, Float.MAX_VALUE, 'O');
+                worker.allocatedBytes += SearchStats.allocatedBytes() - allocationStart;
+            }));
+        }
+        float eval = alphaBeta(ply, depth, alpha, beta, 'O');
+        for (Grid worker : workers) worker.stopped = true;
+        try {
+            for (Future<?> helper : helpers) helper.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Lazy SMP search failed", e);
+        }
+        return eval;
+    }
+
+    /**
+     * Parallel version of the root of alphaBeta() (or minimax()). The first child is searched on the calling
+     * thread, then the other children are searched by the workers on the pool. The best child so far is
+     * shared as an atomic bound, so a worker only needs to find out whether its child is better.
+     *
+     * Like the serial search, the first child with the lowest score is selected, so a child is better than
+     * the best child if its score is lower, or equal and it comes first. A child that comes after the best
+     * child is searched with beta at the best score, and one that comes before it with beta just above, so
+     * that a tie gets its exact score. The selected child therefore does not depend on the number of threads
+     * or on which worker searches which child.
+     * @param depth maximum depth of the decision tree.
+     * @return the score of the optimal child.
+     */
+    private float parallelSearch(int depth) {
+        nodesVisited++;
+        findChildren(ply);
+        prepareRootChildren(ply);
+        Move root = mMove[ply];
+        float[] evals = new float[root.numOfChildren];
+        int[][] lines = new int[root.numOfChildren][]; // Principal variation after each child
+        AtomicLong best = new AtomicLong(packBest(Float.MAX_VALUE, Integer.MAX_VALUE));
+        if (root.numOfChildren > 0) evals[0] = searchRootChild(0, depth, best, lines);
+        if (!searchAborted && root.numOfChildren > 1) {
+            List<Callable<Float>> tasks = new ArrayList<>();
+            for (int i=1; i<root.numOfChildren; i++) {
+                int childIdx = i;
+                tasks.add(() -> searchRootChild(childIdx, depth, best, lines));
+            }
+            try {
+                List<Future<Float>> results = pool.invokeAll(tasks);
+                for (int i=1; i<root.numOfChildren; i++) evals[i] = results.get(i - 1).get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException("Parallel search failed", e);
+            }
+        }
+        for (Grid worker : workers) {
+            if (worker.searchAborted) searchAborted = true;
+        }
+        if (searchAborted) return 0; // Result is discarded by newComputerMove()
+        float minEval = Float.MAX_VALUE;
+        int currentBestChildIdx = 0;
+        for (int i=0; i<root.numOfChildren; i++) {
+            if (evals[i] < minEval) {
+                minEval = evals[i];
+                currentBestChildIdx = i;
+            }
+        }
+        root.selectedChild = currentBestChildIdx;
+        pvLine(ply)[0] = root.child[currentBestChildIdx];
+        System.arraycopy(lines[currentBestChildIdx], 0, pv[ply], 1, lines[currentBestChildIdx].length);
+        pvLength[ply] = lines[currentBestChildIdx].length + 1;
+        return minEval;
+    }
+
+    /**
+     * Let an idle worker search one child of the root, and make it the shared best child if it is better.
+     * @param childIdx the index of the child in mMove[ply].
+     * @param best the best child so far, see packBest().
+     * @param lines receives the principal variation after the child.
+     * @return the score of the child, or a bound on it if the child is not better than the best child.
+     */
+    private float searchRootChild(int childIdx, int depth, AtomicLong best, int[][] lines) {
+        Grid worker = idleWorkers.poll();
+        try {
+            worker.deadline = deadline;
+            long packed = best.get();
+            float beta = (childIdx < bestChildIdx(packed)) ? Math.nextUp(bestEval(packed)) : bestEval(packed);
+            // Only the first child is searched by the calling thread, before the rest are handed to the pool, so
+            // at most one child per worker is searched at a time. search() measures the calling thread itself
+            boolean poolThread = childIdx > 0;
+            long allocationStart = poolThread ? SearchStats.allocatedBytes() : 0;
+            float eval = worker.searchChild(mMove[ply].child[childIdx], depth, beta);
+            if (poolThread) worker.allocatedBytes += SearchStats.allocatedBytes() - allocationStart;
+            if (worker.searchAborted) return 0;
+            lines[childIdx] = Arrays.copyOf(worker.pvLine(ply + 1), worker.pvLength[ply + 1]);
+            long better = packBest(eval, childIdx);
+            while (isBetter(better, packed) && !best.compareAndSet(packed, better)) packed = best.get();
+            return eval;
+        } finally {
+            idleWorkers.add(worker);
+        }
+    }
+
+    /**
+     * Pack the score and index of a child of the root into one long, so both can be updated atomically.
+     */
+    private static long packBest(float eval, int childIdx) {
+        return ((long) Float.floatToIntBits(eval) << 32) | (childIdx & 0xFFFFFFFFL);
+    }
+
+    private static float bestEval(long packed) {
+        return Float.intBitsToFloat((int) (packed >>> 32));
+    }
+
+    private static int bestChildIdx(long packed) {
+        return (int) packed;
+    }
+
+    /**
+     * @return true if child a has a lower score than child b, or the same score and a lower index.
+     */
+    private static boolean isBetter(long a, long b) {
+        return bestEval(a) < bestEval(b) || (bestEval(a) == bestEval(b) && bestChildIdx(a) < bestChildIdx(b));
+    }
+
+    /**
+     * Search the position after the computer plays square at the root, on the board of this worker.
+     * @param beta the score the computer is already guaranteed.
+     * @return the score of square, or a bound on it if it is not below beta.
+     */
+    private float searchChild(int square, int depth, float beta) {
+        clearChildren(ply);
+        mMove[ply].child[0] = square;
+        mMove[ply].numOfChildren = 1;
+        mMove[ply].tmpSelectChild = 0; // So lastMoveWins() and evaluateLeaf() know the move
+        board.make(square, 'O');
+        float eval = alphaBeta
+                ? alphaBeta(ply + 1, depth - 1, -Float.MAX_VALUE, beta, 'X')
+                : minimax(ply + 1, depth - 1, 'X');
+        board.unmake(square);
+        return eval;
+    }
+
+    /**
+     * If the player made the move that was pondered on, and the ponder search completed its threat space
+     * search and at least one iteration, take over its defensive moves and return its result, which findMove()
+     * plays at once if it is a forced win or, without a time limit, if it reached minimaxDepth.
+     * @param start the time the search started.
+     * @return the result of the ponder search, or null if it missed.
+     */
+    private SearchResult findPonderedMove(long start) {
+        int move = ponderedMove;
+        ponderedMove = -1;
+        if (move < 0 || lastMove(ply - 1) != move || ponderDepth < 1) return null;
+        restrictRoot = ponderer.restrictRoot;
+        System.arraycopy(ponderer.defensiveMove, 0, defensiveMove, 0, defensiveMove.length);
+        predictedMove = ponderPredictedMove;
+        return new SearchResult(ponderBestMove, ponderScore, ponderForcedWin ? 0 : ponderDepth, 0,
+                System.currentTimeMillis() - start, ponderPv,
+                ponderForcedWin ? SearchResult.FORCED_WIN : SearchResult.PONDERED);
+    }
+
+    /**
+     * If the current position, or one of its mirror images, is in the opening book, take the move of the
+     * book, mapped back from the canonical image to the current position.
+     * @param start the time the search started.
+     * @return the move, or null.
+     */
+    private SearchResult findBookMove(long start) {
+        if (openingBook == null) return null;
+        int symmetry = board.getCanonicalSymmetry();
+        int record = openingBook.find(board.getHash(symmetry));
+        if (record < 0) return null;
+        int move = Symmetry.invert(openingBook.getMove(record), symmetry, files);
+        if (board.getGrid()[move / files][move % files] != '*') return null; // Another position with the same key
+        bookVisits = openingBook.getVisits(record);
+        return new SearchResult(move, openingBook.getScore(record), 0, 0, System.currentTimeMillis() - start,
+                new int[] {move}, SearchResult.BOOK);
+    }
+
+    /**
+     * Check if the deadline of the search has passed, or if a Lazy SMP worker has been stopped. Both are
+     * only checked every 1024 nodes.
+     * @return true if the search should be abandoned.
+     */
+    private boolean outOfTime() {
+        if (!searchAborted && (nodesVisited & 1023) == 0 &&
+                (stopped || (deadline > 0 && System.currentTimeMillis() >= deadline))) {
+            searchAborted = true;
+        }
+        return searchAborted;
+    }
+
+    /**
+     * The player would have a forced win if it were the player's turn. Mark the moves of the computer after
+     * which the threat space search no longer finds one, and restrict the root of the search to them. If no
+     * move stops the player, the game is lost anyway and every move is searched.
+     */
+    private void findDefensiveMoves() {
+        char[][] grid = board.getGrid();
+        Arrays.fill(defensiveMove, false);
+        for (int square=0; square<files*ranks && !stopped; square++) {
+            if (grid[square / files][square % files] != '*') continue;
+            board.make(square, 'O');
+            // A search that runs out of nodes proves nothing, so the move is kept
+            if (threatSolver.findWin('X', true) < 0) {
+                defensiveMove[square] = true;
+                restrictRoot = true;
+            }
+            board.unmake(square);
+        }
+    }
+
+    /**
+     * At the root, drop the children that are not defensive moves if the root is restricted (unless that
+     * would drop them all), rotate the children by rootShift, and move the child given by rootFirstMove to
+     * the front, keeping the order of the other children.
+     */
+    private void prepareRootChildren(int mPly) {
+        if (mPly != ply) return;
+        if (restrictRoot) {
+            int numOfDefensiveMoves = 0;
+            for (int i=0; i<mMove[mPly].numOfChildren; i++) {
+                if (defensiveMove[mMove[mPly].child[i]]) {
+                    mMove[mPly].child[numOfDefensiveMoves++] = mMove[mPly].child[i];
+                }
+            }
+            if (numOfDefensiveMoves > 0) mMove[mPly].numOfChildren = numOfDefensiveMoves;
+        }
+        int n = mMove[mPly].numOfChildren;
+        if (rootShift > 0 && n > 1) {
+            int[] child = mMove[mPly].child;
+            int shift = rootShift % n;
+            // Rotate left by reversing both parts and then the whole
+            reverse(child, 0, shift);
+            reverse(child, shift, n);
+            reverse(child, 0, n);
+        }
+        if (rootFirstMove < 0) return;
+        for (int i=0; i<mMove[mPly].numOfChildren; i++) {
+            if (mMove[mPly].child[i] == rootFirstMove) {
+                System.arraycopy(mMove[mPly].child, 0, mMove[mPly].child, 1, i);
+                mMove[mPly].child[0] = rootFirstMove;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Make the principal variation of the node at mPly start with square, followed by the line of the child.
+     */
+    private void updatePv(int mPly, int square) {
+        pvLine(mPly)[0] = square;
+        System.arraycopy(pvLine(mPly + 1), 0, pv[mPly], 1, pvLength[mPly + 1]);
+        pvLength[mPly] = pvLength[mPly + 1] + 1;
+    }
+
+    /**
+     * @return pv[mPly], allocated the first time it is needed. The line from mPly is at most as long as the
+     * plies that are left, but only the plies that are searched need one.
+     */
+    private int[] pvLine(int mPly) {
+        if (pv[mPly] == null) pv[mPly] = new int[pv.length - 1 - mPly];
+        return pv[mPly];
+    }
+
+    /**
+     * @return a line of play as a list of coordinates.
+     */
+    private String formatPv(int[] line) {
+        StringBuilder text = new StringBuilder();
+        for (int i=0; i<line.length; i++) {
+            if (i > 0) text.append(' ');
+            text.append('(').append(line[i] % files).append(", ").append(line[i] / files).append(')');
+        }
+        return text.toString();
+    }
+
+    private static void reverse(int[] a, int from, int to) {
+        for (int i=from, j=to-1; i<j; i++, j--) {
+            int tmp = a[i];
+            a[i] = a[j];
+            a[j] = tmp;
+        }
+    }
+
     /**
      * Finds the best move. {@code minimax()} uses the DFS-algorithm to search the tree and
      * will update the data members of mMove[mPly] in order for other methods to access the
-     * optimal child (i.e., the optimal move) at mPly.
+     * optimal child (i.e., the optimal move) at mPly. Each child is made on the board before it
+     * is searched and unmade afterwards, so the board is left as it was found.
      * @param mPly the move that is to be made.
      * @param depth maximum depth of the decision tree.
      * @return the score of the optimal child.
      */
     private float minimax(int mPly, int depth, char player) {
-        if (depth == 0 || fiveInARow(mPly - 1)) {
+        nodesVisited++;
+        pvLength[mPly] = 0;
+        if (outOfTime()) return 0;
+        // Update player; base case (depth = 0) always evaluate score
+        // for current player, so it has to be changed back
+        char playerUpdated = ((mPly-1) % 2 == 0) ? 'X' : 'O';
+        if (depth == 0 || lastMoveWins(mPly, playerUpdated)) {
             // Static evaluation of leaf nodes
-            int currentIdx = mMove[mPly-1].tmpSelectChild;
-            int x = mMove[mPly-1].child[currentIdx][0];
-            int y = mMove[mPly-1].child[currentIdx][1];
-            // Update player; base case (depth = 0) always evaluate score
-            // for current player, so it has to be changed back
-            char playerUpdated = ((mPly-1) % 2 == 0) ? 'X' : 'O';
-            return ScoreEvaluation.goalFunction(mGamePos[mPly-1].grid, playerUpdated, x, y);
-        }
-        // If there's already an object at mGamePos[mPly] or mMove[mPly], it will be reset
-        mGamePos[mPly] = copyGamePos(mPly-1); // Instantiate game position at mPly
-        mMove[mPly] = new Move(files*ranks); // Instantiate move at mPly
-        findAllChildren(mPly); // Find all children at mPly
-//        findAllChildren(mGamePos[mPly].grid, mPly); // Alternative child-finding function
+            return evaluateLeaf(mPly, playerUpdated);
+        }
+        findChildren(mPly); // Find all children at mPly
+        prepareRootChildren(mPly);
         if (player == 'X') {
             // Human player tries to maximize the score
             float maxEval = -Float.MAX_VALUE;
             int currentBestChildIdx = 0;
             for (int i=0; i<mMove[mPly].numOfChildren; i++) {
                 mMove[mPly].tmpSelectChild = i; // So base case (depth = 0) have knowledge of the current child's index
-                // Update grid (not including previous child)
-                updateGrid(mPly, mMove[mPly].child[i][0], mMove[mPly].child[i][1]);
+                board.make(mMove[mPly].child[i], player);
                 float eval = minimax(mPly + 1, depth-1, 'O'); // Go deeper into tree
+                board.unmake(mMove[mPly].child[i]);
+                if (searchAborted) return 0; // Result is discarded by newComputerMove()
                 if (eval > maxEval) {
                     maxEval = eval;
                     currentBestChildIdx = i;
+                    updatePv(mPly, mMove[mPly].child[i]);
                 }
             }
             mMove[mPly].selectedChild = currentBestChildIdx;
@@ -230,12 +1298,14 @@ public class Grid {
             int currentBestChildIdx = 0;
             for (int i=0; i<mMove[mPly].numOfChildren; i++) {
                 mMove[mPly].tmpSelectChild = i; // So base case (depth = 0) have knowledge of the current child's index
-                // Update grid (not including previous child)
-                updateGrid(mPly, mMove[mPly].child[i][0], mMove[mPly].child[i][1]);
+                board.make(mMove[mPly].child[i], player);
                 float eval = minimax(mPly + 1, depth-1, 'X'); // Go deeper into tree
+                board.unmake(mMove[mPly].child[i]);
+                if (searchAborted) return 0;
                 if (eval < minEval) {
                     minEval = eval;
                     currentBestChildIdx = i;
+                    updatePv(mPly, mMove[mPly].child[i]);
                 }
             }
             mMove[mPly].selectedChild = currentBestChildIdx;
@@ -244,251 +1314,333 @@ public class Grid {
     }
 
     /**
-     * Find and add all children at ply mPly.
-     * @param mPly the ply at which we wish to find all children.
+     * Alpha-beta version of {@code minimax()}. The bounds are fail-soft: a subtree that is cut off returns
+     * the best score found so far rather than alpha or beta, which is still enough to refute its parent.
+     * Called with the full window at the root, this selects the same child as {@code minimax()} since
+     * children are compared with strict inequalities in both methods.
+     * @param mPly the move that is to be made.
+     * @param depth maximum depth of the decision tree.
+     * @param alpha the score the maximizing player ('X') is already guaranteed.
+     * @param beta the score the minimizing player ('O') is already guaranteed.
+     * @return the score of the optimal child, or a bound on it if the subtree was cut off.
      */
-    private void findAllChildren(int mPly) {
-        for (int y=0; y<ranks; y++) {
-            for (int x=0; x<files; x++) {
-                if (mGamePos[mPly].grid[y][x] == '*') {
-                    // Each empty square is a valid move and should be as a child of mMove[mPly]
-                    mMove[mPly].child[mMove[mPly].numOfChildren][0] = x;
-                    mMove[mPly].child[mMove[mPly].numOfChildren][1] = y;
-                    mMove[mPly].numOfChildren++;
+    private float alphaBeta(int mPly, int depth, float alpha, float beta, char player) {
+        nodesVisited++;
+        pvLength[mPly] = 0;
+        if (outOfTime()) return 0;
+        char playerUpdated = ((mPly-1) % 2 == 0) ? 'X' : 'O';
+        if (depth == 0 || lastMoveWins(mPly, playerUpdated)) {
+            // Static evaluation of leaf nodes, see minimax()
+            return evaluateLeaf(mPly, playerUpdated);
+        }
+        // The score of an interior node only depends on the game position, not on the move that led to it,
+        // so a position reached through another move order can reuse the stored result. The root is always
+        // searched since newComputerMove() needs its selected child.
+        long hash = board.getHash();
+        long entry = transpositionTable.probe(hash);
+        transpositionProbes++;
+        if (entry == TranspositionTable.MISS) transpositionMisses++;
+        if (mPly > ply) {
+            if (entry != TranspositionTable.MISS && TranspositionTable.getDepth(entry) >= depth) {
+                float score = TranspositionTable.getScore(entry);
+                byte bound = TranspositionTable.getBound(entry);
+                if (bound == TranspositionTable.EXACT ||
+                        (bound == TranspositionTable.LOWER_BOUND && score >= beta) ||
+                        (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+                    transpositionHits++;
+                    return score;
+                }
+            }
+        }
+        float alphaOrig = alpha, betaOrig = beta;
+        findChildren(mPly);
+        // The root keeps the order of findChildren(), so that ties between children are broken the same way
+        // as by minimax() and parallelSearch()
+        if (moveOrdering && mPly > ply) orderChildren(mPly, TranspositionTable.getMove(entry));
+        prepareRootChildren(mPly);
+        float bestEval;
+        if (player == 'X') {
+            float maxEval = -Float.MAX_VALUE;
+            int currentBestChildIdx = 0;
+            for (int i=0; i<mMove[mPly].numOfChildren; i++) {
+                mMove[mPly].tmpSelectChild = i;
+                board.make(mMove[mPly].child[i], player);
+                float eval;
+                if (i == 0 || !principalVariationSearch || depth == 1) {
+                    eval = alphaBeta(mPly + 1, depth-1, alpha, beta, 'O');
+                } else {
+                    // Null window: is the child better than alpha? Only then is its exact score needed
+                    eval = alphaBeta(mPly + 1, depth-1, alpha, Math.nextUp(alpha), 'O');
+                    if (eval > alpha && eval < beta && !searchAborted) {
+                        eval = alphaBeta(mPly + 1, depth-1, alpha, beta, 'O');
+                    }
+                }
+                board.unmake(mMove[mPly].child[i]);
+                if (searchAborted) return 0; // Result is discarded by newComputerMove()
+                if (eval > maxEval) {
+                    maxEval = eval;
+                    currentBestChildIdx = i;
+                    updatePv(mPly, mMove[mPly].child[i]);
+                }
+                if (maxEval > alpha) alpha = maxEval;
+                if (alpha >= beta) {
+                    // 'O' already has a better alternative higher up in the tree
+                    recordCutoff(mPly, i, depth);
+                    break;
+                }
+            }
+            mMove[mPly].selectedChild = currentBestChildIdx;
+            bestEval = maxEval;
+        }
+        else {
+            float minEval = Float.MAX_VALUE;
+            int currentBestChildIdx = 0;
+            for (int i=0; i<mMove[mPly].numOfChildren; i++) {
+                mMove[mPly].tmpSelectChild = i;
+                board.make(mMove[mPly].child[i], player);
+                float eval;
+                if (i == 0 || !principalVariationSearch || depth == 1) {
+                    eval = alphaBeta(mPly + 1, depth-1, alpha, beta, 'X');
+                } else {
+                    // Null window: is the child better than beta?
+                    eval = alphaBeta(mPly + 1, depth-1, Math.nextDown(beta), beta, 'X');
+                    if (eval < beta && eval > alpha && !searchAborted) {
+                        eval = alphaBeta(mPly + 1, depth-1, alpha, beta, 'X');
+                    }
+                }
+                board.unmake(mMove[mPly].child[i]);
+                if (searchAborted) return 0;
+                if (eval < minEval) {
+                    minEval = eval;
+                    currentBestChildIdx = i;
+                    updatePv(mPly, mMove[mPly].child[i]);
+                }
+                if (minEval < beta) beta = minEval;
+                if (alpha >= beta) {
+                    // 'X' already has a better alternative higher up in the tree
+                    recordCutoff(mPly, i, depth);
+                    break;
                 }
             }
+            mMove[mPly].selectedChild = currentBestChildIdx;
+            bestEval = minEval;
         }
+        if (mMove[mPly].numOfChildren > 0) {
+            byte bound = (bestEval <= alphaOrig) ? TranspositionTable.UPPER_BOUND
+                    : (bestEval >= betaOrig) ? TranspositionTable.LOWER_BOUND : TranspositionTable.EXACT;
+            transpositionTable.store(hash, bestEval, depth, bound, mMove[mPly].child[mMove[mPly].selectedChild]);
+        }
+        return bestEval;
     }
 
     /**
-     * Find and add all children at ply mPly, where a child is an empty square adjacent to a non-empty square.
-     * This method is an alternative to findAllChildren(int mPly).
-     * @param mPly the ply at which we wish to find all children.
+     * Sort the children of mMove[mPly] so that the most promising are searched first:
+     * 1. the best child found by an earlier search of the position, i.e. the transposition table move,
+     * 2. the two killer moves of the ply, which are children that caused a cutoff in a sibling position,
+     * 3. the rest, by decreasing history score. A child that causes a cutoff at depth d adds d * d to the
+     *    history score of its square, and all history scores are halved before each computer move.
+     * Children with equal priority keep their order.
+     * @param mPly the ply of the node.
+     * @param ttMove the transposition table move, or -1.
      */
-    private void findAllChildren(char[][] grid, int mPly) {
-        for (int y=0; y<ranks; y++) {
-            for (int x=0; x<files; x++) {
-                // Each empty square that is adjacent to a non-empty square is a valid move and
-                // should be as a child of mMove[mPly]
-                if (grid[y][x] == '*' && (neighborVertically(grid, x, y) ||
-                                neighborHorizontally(grid, x, y) ||
-                                neighborDiagonally(grid, x, y))) {
-                    mMove[mPly].child[mMove[mPly].numOfChildren][0] = x;
-                    mMove[mPly].child[mMove[mPly].numOfChildren][1] = y;
-                    mMove[mPly].numOfChildren++;
-                }
-            }
+    private void orderChildren(int mPly, int ttMove) {
+        Move move = mMove[mPly];
+        for (int i=0; i<move.numOfChildren; i++) {
+            int square = move.child[i];
+            int priority;
+            if (square == ttMove) priority = Integer.MAX_VALUE;
+            else if (square == killers[mPly][0]) priority = Integer.MAX_VALUE - 1;
+            else if (square == killers[mPly][1]) priority = Integer.MAX_VALUE - 2;
+            else priority = Math.min(history[square], Integer.MAX_VALUE - 3);
+            // Sorting in ascending order puts high priorities first, and equal priorities in square order
+            move.sortKey[i] = ((long) (Integer.MAX_VALUE - priority) << 32) | square;
         }
+        Arrays.sort(move.sortKey, 0, move.numOfChildren);
+        for (int i=0; i<move.numOfChildren; i++) move.child[i] = (int) move.sortKey[i];
     }
 
-    private boolean neighborVertically(char[][] grid, int x, int y) {
-        int size = grid[x].length;
-        return ((y+1 < size && grid[y+1][x] != '*') || (y > 0 && grid[y-1][x] != '*'));
+    /**
+     * Count a beta cutoff caused by child i of mMove[mPly], and remember the child as a killer move and in the
+     * history scores.
+     */
+    private void recordCutoff(int mPly, int i, int depth) {
+        betaCutoffs++;
+        if (i == 0) firstChildCutoffs++;
+        if (!moveOrdering) return;
+        int square = mMove[mPly].child[i];
+        if (killers[mPly][0] != square) {
+            killers[mPly][1] = killers[mPly][0];
+            killers[mPly][0] = square;
+        }
+        history[square] = (int) Math.min((long) history[square] + depth*depth, Integer.MAX_VALUE);
     }
 
-    private boolean neighborHorizontally(char[][] grid, int x, int y) {
-        int size = grid[x].length;
-        return ((x+1 < size && grid[y][x+1] != '*') || (x > 0 && grid[y][x-1] != '*'));
+    /**
+     * Check if the move that led to the node at mPly gave player five in a row. Only the lines through that
+     * move are inspected, unless the move is unknown because the position was set with setGrid().
+     * @param mPly the ply of the node.
+     * @param player the player that made the move.
+     */
+    private boolean lastMoveWins(int mPly, char player) {
+        int square = (mPly > ply) ? mMove[mPly-1].child[mMove[mPly-1].tmpSelectChild] : lastMove(mPly - 1);
+        return (square >= 0) ? board.hasFiveThrough(square) : board.hasFive(player);
     }
 
-    private boolean neighborDiagonally(char[][] grid, int x, int y) {
-        int size = grid[x].length;
-        if (y > 0 && x+1 < size && grid[y-1][x+1] != '*') return true;
-        else if (y+1 < size && x+1 < size && grid[y+1][x+1] != '*') return true;
-        else if (y+1 < size && x > 0 && grid[y+1][x-1] != '*') return true;
-        else return (y > 0 && x > 0 && grid[y-1][x-1] != '*');
+    /**
+     * Static evaluation of the move that led to the leaf node at mPly, i.e. the child that is currently
+     * being searched at mPly-1. The move has already been made on the board.
+     * @param mPly the ply of the leaf node.
+     * @param player the player that made the move.
+     * @return the score of the move, or of the whole position with incremental evaluation.
+     */
+    private float evaluateLeaf(int mPly, char player) {
+        leafEvaluations++;
+        if (incrementalEvaluation) return board.getScore();
+        int square = mMove[mPly-1].child[mMove[mPly-1].tmpSelectChild];
+        if ((leafEvaluations & (EVALUATION_SAMPLE_INTERVAL - 1)) == 0) return sampleEvaluation(mPly, player, square);
+        return ScoreEvaluation.goalFunction(board.getGrid(), player, square % files, square / files);
     }
 
-    // ---------- Check game state ----------
+    /**
+     * Score a leaf like evaluateLeaf() and record the call as an EvaluationEvent, if that event is enabled.
+     */
+    private float sampleEvaluation(int mPly, char player, int square) {
+        EvaluationEvent event = new EvaluationEvent();
+        event.begin();
+        float score = ScoreEvaluation.goalFunction(board.getGrid(), player, square % files, square / files);
+        if (event.shouldCommit()) {
+            event.boardSize = files;
+            event.depth = mPly - ply;
+            event.x = square % files;
+            event.y = square / files;
+            event.player = String.valueOf(player);
+            event.score = score;
+            event.commit();
+        }
+        return score;
+    }
 
-    public boolean fiveInARow(int mPly) {
-        char player = (mPly % 2 == 0) ? 'X' : 'O';
+    /**
+     * Reset the children of mMove[mPly], allocating the move the first time the ply is searched.
+     */
+    private void clearChildren(int mPly) {
+        if (mMove[mPly] == null) mMove[mPly] = new Move(files*ranks);
+        mMove[mPly].numOfChildren = 0;
+    }
+
+    /**
+     * Find and add all children at ply mPly. Package-private for the benchmarks, see getNumOfChildren().
+     * @param mPly the ply at which we wish to find all children.
+     */
+    void findAllChildren(int mPly) {
+        clearChildren(mPly);
+        char[][] grid = board.getGrid();
         for (int y=0; y<ranks; y++) {
             for (int x=0; x<files; x++) {
-                if (mGamePos[mPly].grid[y][x] == player) {
-                    if (checkVertical(player, mPly, x, y) ||
-                            checkHorizontal(player, mPly, x, y) ||
-                            checkDiagonal(player, mPly, x, y)) {
-                        return true;
-                    }
+                if (grid[y][x] == '*') {
+                    // Each empty square is a valid move and should be as a child of mMove[mPly]
+                    mMove[mPly].child[mMove[mPly].numOfChildren] = y*files + x;
+                    mMove[mPly].numOfChildren++;
                 }
             }
         }
-        return false;
     }
 
-    private boolean checkVertical(char player, int mPly, int x, int y) {
-        int count = 1;
-        // Check upwards
-        for (int i=y+1; i<ranks; i++) {
-            if (mGamePos[mPly].grid[i][x] == player) count++;
-            else break;
-        }
-        // Check downwards
-        for (int i=y-1; i>=0; i--) {
-            if (mGamePos[mPly].grid[i][x] == player) count++;
-            else break;
-        }
-        return count >= 5;
+    /**
+     * @return the number of children found at ply mPly by the last search or findAllChildren().
+     */
+    int getNumOfChildren(int mPly) {
+        return mMove[mPly].numOfChildren;
     }
 
-    private boolean checkHorizontal(char player, int mPly, int x, int y) {
-        int count = 1;
-        // Check right
-        for (int i=x+1; i<files; i++) {
-            if (mGamePos[mPly].grid[y][i] == player) count++;
-            else break;
-        }
-        // Check left
-        for (int i=x-1; i>=0; i--) {
-            if (mGamePos[mPly].grid[y][i] == player) count++;
-            else break;
+    /**
+     * Find and add the children at ply mPly: the candidate moves kept by board if a candidate radius is set,
+     * otherwise every empty square. An empty grid has no candidate moves, so all squares are children then.
+     * @param mPly the ply at which we wish to find all children.
+     */
+    private void findChildren(int mPly) {
+        if (candidateRadius > 0) {
+            clearChildren(mPly);
+            mMove[mPly].numOfChildren = board.getCandidates(mMove[mPly].child);
         }
-        return count >= 5;
+        if (candidateRadius == 0 || mMove[mPly].numOfChildren == 0) findAllChildren(mPly);
+        if (incrementalEvaluation && mPly - ply < symmetryPlies) pruneSymmetricChildren(mPly);
+        interiorNodes++;
+        childrenGenerated += mMove[mPly].numOfChildren;
     }
 
-    private boolean checkDiagonal(char player, int mPly, int x, int y) {
-        int countA = 1, countB = 1;
-        // Check right, upwards
-        int x1 = x+1, y1 = y-1;
-        while (x1 < files && y1 >= 0) {
-            if (mGamePos[mPly].grid[y1][x1] == player) {
-                countA++;
-                x1++;
-                y1--;
-            }
-            else break;
-        }
-        // Check right, downwards
-        x1 = x+1; y1 = y+1;
-        while (x1 < files && y1 < ranks) {
-            if (mGamePos[mPly].grid[y1][x1] == player) {
-                countB++;
-                x1++;
-                y1++;
-            }
-            else break;
-        }
-        // Check left, downwards
-        x1 = x-1; y1 = y+1;
-        while (x1 >= 0 && y1 < ranks) {
-            if (mGamePos[mPly].grid[y1][x1] == player) {
-                countA++;
-                x1--;
-                y1++;
-            }
-            else break;
-        }
-        // Check left, upwards
-        x1 = x-1; y1 = y-1;
-        while (x1 >= 0 && y1 > 0) {
-            if (mGamePos[mPly].grid[y1][x1] == player) {
-                countB++;
-                x1--;
-                y1--;
+    /**
+     * Find the symmetries (see Symmetry) that map the position on the board onto itself. If one of them maps
+     * a child onto another child, both lead to mirror images of the same position, so only the child with
+     * the smallest square index of each such group is kept, in the order of findChildren(). The kept child is
+     * a move on the actual grid, so nothing has to be mapped back.
+     */
+    private void pruneSymmetricChildren(int mPly) {
+        char[][] grid = board.getGrid();
+        int numOfSymmetries = 0;
+        for (int symmetry=1; symmetry<Symmetry.COUNT; symmetry++) {
+            if (isSymmetric(grid, symmetry)) symmetries[numOfSymmetries++] = symmetry;
+        }
+        if (numOfSymmetries == 0) return;
+        int numOfChildren = 0;
+        for (int i=0; i<mMove[mPly].numOfChildren; i++) {
+            int square = mMove[mPly].child[i];
+            boolean smallest = true;
+            for (int j=0; smallest && j<numOfSymmetries; j++) {
+                smallest = Symmetry.apply(square, symmetries[j], files) >= square;
             }
-            else break;
+            if (smallest) mMove[mPly].child[numOfChildren++] = square;
         }
-        return countA >= 5 || countB >= 5;
+        mMove[mPly].numOfChildren = numOfChildren;
     }
 
-    public boolean gameIsATie(int mPly) {
-        return gameIsATie(mGamePos[mPly].grid);
+    /**
+     * Check if symmetry maps grid onto itself.
+     */
+    private boolean isSymmetric(char[][] grid, int symmetry) {
+        for (int square=0; square<files*ranks; square++) {
+            int image = Symmetry.apply(square, symmetry, files);
+            if (grid[square / files][square % files] != grid[image / files][image % files]) return false;
+        }
+        return true;
     }
 
-    public boolean gameIsATie(char[][] grid) {
-        if (ply == maxPly) return true;
-        char X = 'X', O = 'O', empty = '*';
-        for (int y=0; y<ranks; y++) {
-            for (int x=0; x<files; x++) {
-                if (grid[y][x] == empty) {
-                    // Check if win is possible in any direction
-                    if (possibleVertical(grid, x, y, X) ||
-                            possibleVertical(grid, x, y, O) ||
-                            possibleHorizontal(grid, x, y, X) ||
-                            possibleHorizontal(grid, x, y, O) ||
-                            possibleDiagonal(grid, x, y, X) ||
-                            possibleDiagonal(grid, x, y, O))
-                        return false;
-                    }
-                }
-            }
-        return true;
+    // ---------- Check game state ----------
+
+    /**
+     * Check if the move at mPly gave its player five in a row. Only the lines through that move are
+     * inspected, unless the move is unknown because the position was set with setGrid().
+     * @param mPly the ply of the move.
+     */
+    public boolean fiveInARow(int mPly) {
+        char player = (mPly % 2 == 0) ? 'X' : 'O';
+        int square = lastMove(mPly);
+        if (mPly == boardPly) return (square < 0) ? board.hasFive(player) : board.hasFiveThrough(square);
+        BitBoard position = positionAt(mPly);
+        if (square < 0) return position.hasFive(player);
+        return position.hasFiveThrough(square % files, square / files, player);
     }
 
-    private boolean possibleVertical(char[][] grid, int x, int y, char opponent) {
-        int count = 1;
-        // Check upwards
-        for (int i=y+1; i<ranks; i++) {
-            if (grid[i][x] != opponent) count++;
-            else break;
-        }
-        // Check downwards
-        for (int i=y-1; i>=0; i--) {
-            if (grid[i][x] != opponent) count++;
-            else break;
-        }
-        return count >= 5;
+    /**
+     * Check if the game position at mPly is a tie. For the current game position this only reads the
+     * live window counts that board keeps up to date.
+     */
+    public boolean gameIsATie(int mPly) {
+        if (mPly == boardPly) return ply == maxPly || board.isTie();
+        return gameIsATie(positionAt(mPly));
     }
 
-    private boolean possibleHorizontal(char[][] grid, int x, int y, char opponent) {
-        int count = 1;
-        // Check right
-        for (int i=x+1; i<files; i++) {
-            if (grid[y][i] != opponent) count++;
-            else break;
-        }
-        // Check left
-        for (int i=x-1; i>=0; i--) {
-            if (grid[y][i] != opponent) count++;
-            else break;
-        }
-        return count >= 5;
+    public boolean gameIsATie(char[][] grid) {
+        return gameIsATie(BitBoard.fromGrid(grid));
     }
 
-    private boolean possibleDiagonal(char[][] grid, int x, int y, char opponent) {
-        int countA = 1, countB = 1;
-        // Check right, upwards
-        int x1 = x+1, y1 = y-1;
-        while (x1 < files && y1 >= 0) {
-            if (grid[y1][x1] != opponent) {
-                countA++;
-                x1++;
-                y1--;
-            }
-            else break;
-        }
-        // Check right, downwards
-        x1 = x+1; y1 = y+1;
-        while (x1 < files && y1 < ranks) {
-            if (grid[y1][x1] != opponent) {
-                countB++;
-                x1++;
-                y1++;
-            }
-            else break;
-        }
-        // Check left, downwards
-        x1 = x-1; y1 = y+1;
-        while (x1 >= 0 && y1 < ranks) {
-            if (grid[y1][x1] != opponent) {
-                countA++;
-                x1--;
-                y1++;
-            }
-            else break;
-        }
-        // Check left, upwards
-        x1 = x-1; y1 = y-1;
-        while (x1 >= 0 && y1 > 0) {
-            if (grid[y1][x1] != opponent) {
-                countB++;
-                x1--;
-                y1--;
-            }
-            else break;
-        }
-        return countA >= 5 || countB >= 5;
+    /**
+     * The game is a tie when neither player has a window of five squares in a row left that is free of
+     * the opponent's symbols.
+     */
+    private boolean gameIsATie(BitBoard bits) {
+        if (ply == maxPly) return true;
+        return bits.liveWindows('X') == 0 && bits.liveWindows('O') == 0;
     }
 
     // ---------- Print methods ----------
@@ -502,6 +1654,7 @@ public class Grid {
         else {
             System.out.println("Printing grid after ply " + mPly + ":\n");
         }
+        BitBoard position = positionAt(mPly);
         System.out.print("   ");
         for (int x=0; x<files; x++) System.out.print(Color.ANSI_YELLOW + x + " " + Color.ANSI_RESET);
         System.out.println();
@@ -509,7 +1662,7 @@ public class Grid {
             if (y<10) System.out.print(Color.ANSI_YELLOW + y + "  " + Color.ANSI_RESET);
             else System.out.print(Color.ANSI_YELLOW + y + " " + Color.ANSI_RESET);
             for (int x=0; x<files; x++) {
-                char currentSquare = mGamePos[mPly].grid[y][x];
+                char currentSquare = position.get(x, y);
                 if (x>=10) {
                     if (currentSquare == 'O')
                         System.out.print(Color.ANSI_CYAN + " " + currentSquare + " " + Color.ANSI_RESET);
@@ -532,10 +1685,11 @@ public class Grid {
     }
 
     /**
-     * Print all grids up to the current ply.
+     * Print all grids up to the current ply, each rebuilt from the moves, starting from the position set
+     * with setGrid() if there is one.
      */
     public void printAllPlys() {
-        for (int i=0; i<ply; i++) {
+        for (int i=Math.max(startPly - 1, 0); i<ply; i++) {
             printGrid(i, false);
         }
     }
@@ -547,7 +1701,8 @@ public class Grid {
     private void printChildren(int mPly) {
         System.out.println("The children of mMove[" + mPly + "] are:");
         for (int i=0; i<mMove[mPly].numOfChildren; i++) {
-            System.out.println(Arrays.toString(mMove[mPly].child[i]));
+            int square = mMove[mPly].child[i];
+            System.out.println("[" + square % files + ", " + square / files + "]");
         }
         System.out.println();
     }
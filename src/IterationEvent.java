@@ -0,0 +1,39 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event for each completed iteration of iterative deepening in Grid, see
+ * ComputerMoveEvent. Iterations that are abandoned at the deadline are not recorded.
+ */
+
+@Name("fiveinarow.Iteration")
+@Label("Search Iteration")
+@Category("Five in a Row")
+@Description("One iteration of iterative deepening")
+public class IterationEvent extends jdk.jfr.Event {
+
+    @Label("Board Size")
+    int boardSize;
+
+    @Label("Ply")
+    int ply;
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Nodes")
+    @Description("Nodes visited by the searching thread in this iteration, without those of its workers")
+    long nodes;
+
+    @Label("Score")
+    float score;
+
+    @Label("Move X")
+    @Description("Best move after this iteration")
+    int moveX;
+
+    @Label("Move Y")
+    int moveY;
+}
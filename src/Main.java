@@ -1,3 +1,5 @@
+import java.io.IOException;
+
 /**
  * Do not run this program in Command prompt as it doesn't support ANSI coloring.
  */
@@ -7,8 +9,42 @@ public class Main {
     public static void main(String[] args) {
         int GRID_SIZE = 6;
         int MINIMAX_DEPTH = 1;
+        long TIME_LIMIT = 0; // Milliseconds per computer move. If > 0, MINIMAX_DEPTH is ignored
+        boolean ALPHA_BETA = true;
+        boolean MOVE_ORDERING = true; // Only used by alpha-beta
+        boolean PRINCIPAL_VARIATION_SEARCH = true; // Only used by alpha-beta
+        float ASPIRATION_WINDOW = 50; // Root window around the previous iteration's score. If 0, use the full window
+        boolean INCREMENTAL_EVALUATION = false; // Score whole positions instead of single moves
+        int CANDIDATE_RADIUS = 0; // Only search squares this close to a symbol. If 0, search all empty squares
+        int TRANSPOSITION_TABLE_SIZE = 1 << 20; // Entries, only used by alpha-beta
+        long THREAT_SEARCH_NODES = 2000; // Node budget for finding forced wins before the search. If 0, skip it
+        int THREADS = 1; // Threads that search the children of the root in parallel
+        boolean LAZY_SMP = false; // Let the threads search the whole root and share a transposition table instead
+        boolean PONDERING = false; // Search the predicted position while the player thinks
+        int SYMMETRY_PRUNING_PLIES = 0; // Plies at which mirror-image moves are skipped, with INCREMENTAL_EVALUATION
+        String OPENING_BOOK = ""; // File written by OpeningBookBuilder. If empty, no book is used
 
         Grid grid = new Grid(GRID_SIZE, MINIMAX_DEPTH);
+        grid.setAlphaBeta(ALPHA_BETA);
+        grid.setMoveOrdering(MOVE_ORDERING);
+        grid.setPrincipalVariationSearch(PRINCIPAL_VARIATION_SEARCH);
+        grid.setAspirationWindow(ASPIRATION_WINDOW);
+        grid.setIncrementalEvaluation(INCREMENTAL_EVALUATION);
+        grid.setCandidateRadius(CANDIDATE_RADIUS);
+        grid.setTimeLimit(TIME_LIMIT);
+        grid.setTranspositionTableSize(TRANSPOSITION_TABLE_SIZE);
+        grid.setThreatSearch(THREAT_SEARCH_NODES);
+        grid.setThreads(THREADS);
+        grid.setLazySmp(LAZY_SMP);
+        grid.setPondering(PONDERING);
+        grid.setSymmetryPruning(SYMMETRY_PRUNING_PLIES);
+        if (!OPENING_BOOK.isEmpty()) {
+            try {
+                grid.setOpeningBook(new OpeningBook(OPENING_BOOK));
+            } catch (IOException e) {
+                System.out.println("Could not open the opening book: " + e.getMessage());
+            }
+        }
         System.out.println("\nNew game created\n");
         grid.printGrid(grid.getPly(), true);
 
@@ -36,6 +72,7 @@ public class Main {
                 break;
             }
         }
+        grid.stopPondering();
 
 //         Testing
 //        System.out.println("TESTING FIVE IN A ROW");
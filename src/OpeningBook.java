@@ -0,0 +1,117 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Read-only table of searched opening positions, stored in a file and mapped into memory, so that a large
+ * book is paged in by the operating system as it is probed instead of being loaded onto the heap.
+ *
+ * The file starts with a header (MAGIC, the grid size and the number of records), followed by the records
+ * sorted by key. Each record holds the canonical key of a position (see Board.getCanonicalSymmetry()), the
+ * best move in canonical coordinates, its minimax score and the number of times the builder reached the
+ * position (see OpeningBookBuilder). A position is found by binary search on the keys.
+ *
+ * Since every position is stored as its canonical image, a book covers all eight mirror images of a
+ * position with one record: the move of the record is mapped back with Symmetry.invert().
+ */
+
+public class OpeningBook {
+
+    private static final int MAGIC = 0x474F4D4B; // "GOMK"
+    private static final int HEADER_SIZE = 12; // Magic, size, number of records
+    private static final int RECORD_SIZE = 20; // Key (8 bytes), move, score, visits (4 bytes each)
+
+    private final MappedByteBuffer buffer;
+    private final int size;
+    private final int numOfRecords;
+
+    /**
+     * Map the book in file into memory.
+     * @throws IOException if file cannot be read or is not an opening book.
+     */
+    public OpeningBook(String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(file), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // Stays valid after close
+        }
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not an opening book");
+        }
+        size = buffer.getInt(4);
+        numOfRecords = buffer.getInt(8);
+        if (buffer.capacity() != HEADER_SIZE + (long) numOfRecords * RECORD_SIZE) {
+            throw new IOException(file + " is truncated");
+        }
+    }
+
+    /**
+     * @return the size of the grid the book was built for.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public int getNumOfRecords() {
+        return numOfRecords;
+    }
+
+    /**
+     * Look up a position.
+     * @param key the canonical key of the position.
+     * @return the index of the record, to be read with getMove() etc., or -1 if the position is not in the
+     * book.
+     */
+    public int find(long key) {
+        int low = 0, high = numOfRecords - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = buffer.getLong(offset(mid));
+            if (midKey < key) low = mid + 1;
+            else if (midKey > key) high = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the best move of the record in canonical coordinates, as a packed square index.
+     */
+    public int getMove(int record) {
+        return buffer.getInt(offset(record) + 8);
+    }
+
+    public float getScore(int record) {
+        return buffer.getFloat(offset(record) + 12);
+    }
+
+    public int getVisits(int record) {
+        return buffer.getInt(offset(record) + 16);
+    }
+
+    private static int offset(int record) {
+        return HEADER_SIZE + record * RECORD_SIZE;
+    }
+
+    /**
+     * Write a book.
+     * @param records the records, each a key mapped to {move, Float.floatToRawIntBits(score), visits}.
+     */
+    public static void write(String file, int size, TreeMap<Long, int[]> records) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(size);
+            out.writeInt(records.size());
+            // The keys of a TreeMap<Long, ...> are in the same signed order that find() searches in
+            for (Map.Entry<Long, int[]> record : records.entrySet()) {
+                out.writeLong(record.getKey());
+                for (int field : record.getValue()) out.writeInt(field);
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Builds an opening book (see OpeningBook) offline by searching the positions of the first moves deeply.
+ *
+ * The player 'X' always moves first, so the book holds the positions where the computer ('O') is to move.
+ * Starting from the empty grid, every move of 'X' is tried: every square on the empty grid, and later every
+ * blank square within radius of a symbol. Each position is searched to depth, and the best move of 'O' is
+ * played to reach the positions of the next move of 'X'. Mirror images share one canonical record, so each
+ * is only searched once, while its visits count how often the builder reached it.
+ *
+ * Usage: java OpeningBookBuilder file [size [depth [moves [radius]]]]
+ * moves is the number of moves of 'X' to cover, 2 by default.
+ */
+
+public class OpeningBookBuilder {
+
+    private static final int SEARCH_RADIUS = 2; // Candidate radius of the search, see Grid.setCandidateRadius()
+    private static final long THREAT_SEARCH_NODES = 2000;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: java OpeningBookBuilder file [size [depth [moves [radius]]]]");
+            return;
+        }
+        String file = args[0];
+        int size = (args.length > 1) ? Integer.parseInt(args[1]) : 15;
+        int depth = (args.length > 2) ? Integer.parseInt(args[2]) : 4;
+        int moves = (args.length > 3) ? Integer.parseInt(args[3]) : 2;
+        int radius = (args.length > 4) ? Integer.parseInt(args[4]) : 1;
+
+        Grid grid = new Grid(size, depth);
+        grid.setAlphaBeta(true);
+        grid.setMoveOrdering(true);
+        grid.setPrincipalVariationSearch(true);
+        grid.setCandidateRadius(SEARCH_RADIUS);
+        grid.setTranspositionTableSize(1 << 20);
+        grid.setThreatSearch(THREAT_SEARCH_NODES);
+        Board board = new Board(size);
+        TreeMap<Long, int[]> records = new TreeMap<>();
+        long start = System.currentTimeMillis();
+
+        // Positions with 'X' to move
+        List<char[][]> frontier = new ArrayList<>();
+        frontier.add(emptyGrid(size));
+        for (int move=0; move<moves; move++) {
+            List<char[][]> next = new ArrayList<>();
+            for (char[][] position : frontier) {
+                for (int square=0; square<size*size; square++) {
+                    if (!isReply(position, square, radius, move == 0)) continue;
+                    char[][] child = copy(position);
+                    child[square / size][square % size] = 'X';
+                    board.load(child);
+                    if (board.hasFive('X') || board.isTie()) continue;
+                    int symmetry = board.getCanonicalSymmetry();
+                    long key = board.getHash(symmetry);
+                    int[] record = records.get(key);
+                    if (record != null) {
+                        record[2]++;
+                        continue;
+                    }
+                    SearchResult result = grid.bestMove(child, SearchLimits.depth(depth));
+                    records.put(key, new int[] {Symmetry.apply(result.getMove(), symmetry, size),
+                            Float.floatToRawIntBits(result.getScore()), 1});
+                    char[][] reply = copy(child);
+                    reply[result.getMove() / size][result.getMove() % size] = 'O';
+                    board.load(reply);
+                    if (!board.hasFive('O') && !board.isTie()) next.add(reply);
+                }
+            }
+            System.out.println("Move " + (move + 1) + ": " + records.size() + " positions, " +
+                    (System.currentTimeMillis() - start) + " ms");
+            frontier = next;
+        }
+        OpeningBook.write(file, size, records);
+        System.out.println("Wrote " + records.size() + " positions to " + file);
+    }
+
+    /**
+     * Check if 'X' should try square: any square on the empty grid, otherwise a blank square within radius of
+     * a symbol.
+     */
+    private static boolean isReply(char[][] position, int square, int radius, boolean empty) {
+        int size = position.length, x = square % size, y = square / size;
+        if (position[y][x] != '*') return false;
+        if (empty) return true;
+        for (int ty=Math.max(y - radius, 0); ty<=Math.min(y + radius, size - 1); ty++) {
+            for (int tx=Math.max(x - radius, 0); tx<=Math.min(x + radius, size - 1); tx++) {
+                if (position[ty][tx] != '*') return true;
+            }
+        }
+        return false;
+    }
+
+    private static char[][] emptyGrid(int size) {
+        char[][] grid = new char[size][size];
+        for (char[] row : grid) Arrays.fill(row, '*');
+        return grid;
+    }
+
+    private static char[][] copy(char[][] grid) {
+        char[][] copy = new char[grid.length][];
+        for (int y=0; y<grid.length; y++) copy[y] = grid[y].clone();
+        return copy;
+    }
+}
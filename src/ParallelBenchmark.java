@@ -0,0 +1,73 @@
+/**
+ * Measures the speedup of the parallel searches (see Grid.setThreads() and Grid.setLazySmp()) on positions
+ * from Test. Each position is searched to a fixed depth with 1, 2, 4, ... threads, up to the number of
+ * processors, which gives the time to depth and the nodes per second of each thread count. The move that the
+ * parallel root search selects is checked against the one selected by the serial search; Lazy SMP may select
+ * another move, since the threads finish in a different order in every run.
+ *
+ * Usage: java ParallelBenchmark [depth [maxThreads]]
+ */
+
+public class ParallelBenchmark {
+
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) {
+        int depth = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 1) maxThreads = Integer.parseInt(args[1]);
+        for (boolean lazySmp : new boolean[] {false, true}) {
+            System.out.println(lazySmp ? "\nLazy SMP" : "Parallel root search");
+            run("DoNotBuildTowardsLeft", Test.DoNotBuildTowardsLeft.size, Test.DoNotBuildTowardsLeft.previousPly,
+                    Test.DoNotBuildTowardsLeft.gridPreviousPly, Test.DoNotBuildTowardsLeft.gridCurrentPly, depth,
+                    maxThreads, lazySmp);
+            run("DoNotBuildTowardsLeft2", Test.DoNotBuildTowardsLeft2.size, Test.DoNotBuildTowardsLeft2.previousPly,
+                    Test.DoNotBuildTowardsLeft2.gridPreviousPly, Test.DoNotBuildTowardsLeft2.gridCurrentPly, depth,
+                    maxThreads, lazySmp);
+            run("PreventFiveInARow", Test.PreventFiveInARow.size, Test.PreventFiveInARow.previousPly,
+                    Test.PreventFiveInARow.gridPreviousPly, Test.PreventFiveInARow.gridCurrentPly, depth,
+                    maxThreads, lazySmp);
+        }
+    }
+
+    /**
+     * Search one position with an increasing number of threads and print the time, nodes, nodes per second
+     * and speedup of each.
+     */
+    private static void run(String name, int size, int previousPly, char[][] gridPreviousPly,
+                            char[][] gridCurrentPly, int depth, int maxThreads, boolean lazySmp) {
+        System.out.println(name + ", depth " + depth);
+        long serialTime = 0;
+        int serialMove = -1;
+        for (int threads=1; threads<=maxThreads; threads*=2) {
+            // The fastest of a few runs, so that the first run does not pay for compiling the search
+            long time = Long.MAX_VALUE;
+            SearchResult result = null;
+            for (int run=0; run<RUNS; run++) {
+                Grid grid = new Grid(size, depth);
+                grid.setAlphaBeta(true);
+                grid.setMoveOrdering(true);
+                grid.setThreads(threads);
+                grid.setLazySmp(lazySmp);
+                grid.setPly(previousPly);
+                grid.setGrid(gridPreviousPly);
+                grid.setGrid(gridCurrentPly);
+                grid.setPly(previousPly + 1);
+                long start = System.nanoTime();
+                result = grid.bestMove(SearchLimits.depth(depth));
+                time = Math.min(time, System.nanoTime() - start);
+                grid.setThreads(1); // Shuts the pool down
+            }
+            int move = result.getMove();
+            if (threads == 1) {
+                serialTime = time;
+                serialMove = move;
+            }
+            System.out.println(String.format(
+                    "  threads: %2d, time: %7.1f ms, nodes: %9d, nodes/s: %9.0f, speedup: %.2f, move: (%d, %d)%s",
+                    threads, time / 1e6, result.getNodes(), result.getNodes() / (time / 1e9),
+                    (double) serialTime / time, move % size, move / size,
+                    (move == serialMove || lazySmp) ? "" : " DIFFERS FROM SERIAL SEARCH"));
+        }
+    }
+}
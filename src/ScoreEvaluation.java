@@ -17,9 +17,7 @@
  * There are many more factors or "strategic rules" to consider when quantifying a move. Here follows a list of
  * different cases that must be accounted for when deciding the score of a move. I have marked each rule in the
  * following list as (1), (2) and so on. In order to make the code a bit more readable, I have added comments such as
- * "Rule (i)" in the method verticalScore() to mark that the following piece of code handles rule (i). Since
- * it becomes easy to understand horizontalScore() and diagonalScore() once verticalScore() is understood, I leave these
- * comments out in horizontalScore() and diagonalScore().
+ * "Rule (i)" in the method scoreLine() to mark that the following piece of code handles rule (i).
  *
  *  LIST OF RULES:
  *
@@ -63,6 +61,40 @@
  * get five in row that way. Therefore, a move towards the left will be penalized by unableToBuildFiveScore = -2. On
  * the other hand, if a move can build towards five in a row, it is by ableToBuildFiveScore = 1.
  *
+ * ---------- Position score: ----------
+ *
+ * goalFunction() scores a single move and has to scan the rows, columns and diagonals through it every time it is
+ * called. Board instead keeps a score for the whole game position up to date as moves are made and unmade, using the
+ * same weights:
+ *
+ * Every window of five squares in a row that contains symbols of only one player is worth windowScore[n] to that
+ * player, where n is the number of symbols in the window: ableToBuildFiveScore for one symbol, friendlyNeighborScore
+ * for two, preventFourInARowScore for three (these are the threes of rule (3)), fourInARowScore for four (rule (5))
+ * and maximumScore for five (rule (1)). The score of the position is the sum for 'X' minus the sum for 'O'. A window
+ * that contains both symbols is worth nothing, which is rule (6), and squares at the end of the grid are part of fewer
+ * windows, which is rule (4).
+ *
+ * The position score is therefore not the same as the sum of goalFunction() over the moves: it has no protection
+ * score (rule (2)) or neighbor scores, and it scores the threats of both players, not only the last move. It plays
+ * differently: in matches between the two at depth 1, goalFunction() wins most games, while from depth 2 on the
+ * position score does. So Grid.setIncrementalEvaluation() is off by default, since Main searches to depth 1.
+ *
+ * ---------- Line patterns: ----------
+ *
+ * The rules above only look at the four squares on either side of the move along a line: a fifth symbol of the
+ * player would already be five in a row, a fifth symbol of the opponent already a win for the opponent, and a line
+ * of five squares without the opponent is all that rule (6) asks for. goalFunction() therefore reads these eight
+ * squares on each of the four lines through the move and encodes them as an index with four digits per side:
+ * BLANK, OWN (the player's symbol), OPPONENT or WALL (off the grid). The digits are relative to the player, so the
+ * same tables serve both players. lineScore and lineInfo hold the outcome of the rules for each of the 4^8 = 65536
+ * indices, computed once by scoreLine() when the class is loaded, and scoring a move takes four lookups in each.
+ *
+ * Rule (4) depends on where the line meets the end of the grid, which the index does not tell apart from other
+ * walls, so lineInfo also keeps the number of symbols in a row next to the move on each side, and goalFunction()
+ * adds endOfGridScore if that run reaches the last square of the grid. On the diagonals this is the second square
+ * from the left or right end instead, and the scan towards the upper left stops before the first row; both are kept
+ * as they were when the rules were first written, since the search has been tuned with these scores.
+ *
  */
 
 public final class ScoreEvaluation {
@@ -78,6 +110,50 @@ public final class ScoreEvaluation {
     private final static float hostileNeighborScore = 0.5f; // See logic explanation
     private final static float endOfGridScore = -0.5f; // Rule (4)
 
+    /**
+     * The worth of a window of five squares containing n symbols of one player and none of the other, see
+     * "Position score". Kept as whole numbers so that sums of them are exact, whatever order moves are made in.
+     */
+    static final long[] windowScore = {
+            0, (long) ableToBuildFiveScore, (long) friendlyNeighborScore, (long) preventFourInARowScore,
+            (long) fourInARowScore, (long) maximumScore
+    };
+
+    // Digits of the line index, see "Line patterns"
+    private static final int BLANK = 0, OWN = 1, OPPONENT = 2, WALL = 3;
+    private static final int SIDE = 4; // Squares read on each side of the move
+
+    // Bits of lineInfo
+    private static final int WIN = 1; // Rule (1)
+    private static final int ABLE_TO_BUILD_FIVE = 2; // Rule (6)
+    private static final int FOUR = 4; // Rule (5)
+    private static final int RUN_SHIFT = 3; // Symbols in a row next to the move on each side, 3 bits per side
+
+    private static final float[] lineScore = new float[1 << (4 * SIDE)]; // Rules (2), (3) and neighbors
+    private static final short[] lineInfo = new short[1 << (4 * SIDE)];
+
+    /**
+     * The digit of each symbol, for 'X' and for 'O' as the player.
+     */
+    private static final int[][] digit = new int[2][128];
+
+    static {
+        digit[0]['*'] = BLANK;
+        digit[0]['X'] = OWN;
+        digit[0]['O'] = OPPONENT;
+        digit[1]['*'] = BLANK;
+        digit[1]['X'] = OPPONENT;
+        digit[1]['O'] = OWN;
+        int[] first = new int[SIDE], second = new int[SIDE];
+        for (int index=0; index<lineScore.length; index++) {
+            for (int i=0; i<SIDE; i++) {
+                first[i] = (index >>> (2*i)) & 3;
+                second[i] = (index >>> (2*(SIDE + i))) & 3;
+            }
+            scoreLine(index, first, second);
+        }
+    }
+
     /**
      * Calculate the score for a potential move given by (x, y).
      * @param grid the current game position.
@@ -88,252 +164,124 @@ public final class ScoreEvaluation {
      */
     public static float goalFunction(char[][] grid, char player, int x, int y) {
         int size = grid.length;
-        float vertical = verticalScore(grid, player, size, x, y);
-        float horizontal = horizontalScore(grid, player, size, x, y);
-        float diagonal = diagonalScore(grid, player, size, x, y);
-        return (player == 'X') ? (vertical+horizontal+diagonal) : -(vertical+horizontal+diagonal);
+        int[] digits = digit[(player == 'X') ? 0 : 1];
+        // Each line is read first in one direction and then in the other, which matters for rule (3)
+        int vertical = lineIndex(grid, digits, x, y, 0, 1, size-1 - y, y);
+        int horizontal = lineIndex(grid, digits, x, y, 1, 0, size-1 - x, x);
+        int diagonalA = lineIndex(grid, digits, x, y, 1, -1, Math.min(size-1 - x, y), Math.min(x, size-1 - y));
+        int diagonalB = lineIndex(grid, digits, x, y, 1, 1, Math.min(size-1 - x, size-1 - y), Math.min(x, y-1));
+        float score = straightScore(vertical, size-1 - y, y, x == size-1 || x == 0) +
+                straightScore(horizontal, size-1 - x, x, y == size-1 || y == 0) +
+                diagonalScore(diagonalA, diagonalB, size, x, y);
+        return (player == 'X') ? score : -score;
     }
 
-    private static float verticalScore(char[][] grid, char player, int size, int x, int y) {
-        char opponent = (player == 'X') ? 'O': 'X';
-        int countPlayer = 1, countOpponent = 0, countPlayerAndBlanks = 1;
-        boolean onlyPlayerSymbolsVisited;
-        float score = 0f;
-        // Check upwards, check for square == player
-        onlyPlayerSymbolsVisited = true;
-        for (int i=y+1; i<size; i++) {
-            if (grid[i][x] != player) onlyPlayerSymbolsVisited = false;
-            if (grid[i][x] != opponent) countPlayerAndBlanks++; // Rule (6), see end of method
-            if (grid[i][x] == player && onlyPlayerSymbolsVisited) {
-                countPlayer++;
-                if (countPlayer == 5) return maximumScore; // Rule (1)
-                if (i == size-1) score += endOfGridScore; // Rule (4)
-                score += friendlyNeighborScore;
-            } else if (grid[i][x] == opponent) break;
-        }
-        // Check upwards, check for square == opponent
-        for (int i=y+1; i<size; i++) {
-            if (countOpponent == 3 && grid[i][x] == '*') score += preventFourInARowScore; // Rule (3)
-            if (grid[i][x] == opponent) {
-                countOpponent++;
-                if (countOpponent == 4) score += protectionScore; // Rule (2)
-                if (i == size-1) score += endOfGridScore; // Rule (4)
-                score += hostileNeighborScore;
-            }
-            else break;
-        }
-        // Check downwards, check for square == player
-        onlyPlayerSymbolsVisited = true;
-        for (int i=y-1; i>=0; i--) {
-            if (grid[i][x] != player) onlyPlayerSymbolsVisited = false;
-            if (grid[i][x] != opponent) countPlayerAndBlanks++;
-            if (grid[i][x] == player && onlyPlayerSymbolsVisited) {
-                countPlayer++;
-                if (countPlayer == 5) return maximumScore;
-                if (i == 0) score += endOfGridScore;
-                score += friendlyNeighborScore;
-            } else if (grid[i][x] == opponent) break;
+    /**
+     * Encode the squares along a line through (x, y), see "Line patterns".
+     * @param dx the x-step of the first direction. The second direction is the opposite.
+     * @param dy the y-step of the first direction.
+     * @param firstLength the number of squares on the grid in the first direction.
+     * @param secondLength the number of squares on the grid in the second direction.
+     */
+    private static int lineIndex(char[][] grid, int[] digits, int x, int y, int dx, int dy, int firstLength,
+                                 int secondLength) {
+        int index = 0;
+        for (int i=SIDE; i>=1; i--) {
+            index = (index << 2) | ((i <= secondLength) ? digits[grid[y - i*dy][x - i*dx]] : WALL);
         }
-        // Check downwards, check for square == opponent
-        for (int i=y-1; i>=0; i--) {
-            if (countOpponent == 3 && grid[i][x] == '*') score += preventFourInARowScore;
-            if (grid[i][x] == opponent) {
-                countOpponent++;
-                if (countOpponent == 4) score += protectionScore;
-                if (i == 0) score += endOfGridScore;
-                score += hostileNeighborScore;
-            }
-            else break;
+        for (int i=SIDE; i>=1; i--) {
+            index = (index << 2) | ((i <= firstLength) ? digits[grid[y + i*dy][x + i*dx]] : WALL);
         }
-        if (countPlayerAndBlanks < 5) score += unableToBuildFiveScore; // Rule (6)
-        else score += ableToBuildFiveScore;
-        if (countPlayer == 4) score += fourInARowScore; // Rule (5)
+        return index;
+    }
+
+    /**
+     * The score of the vertical or horizontal line with the given index.
+     * @param firstEnd the distance from the move to the end of the grid in the first direction.
+     * @param secondEnd the distance from the move to the end of the grid in the second direction.
+     * @param acrossEnd true if the move is at an end of the grid across the line.
+     */
+    private static float straightScore(int index, int firstEnd, int secondEnd, boolean acrossEnd) {
+        int info = lineInfo[index];
+        if ((info & WIN) != 0) return maximumScore;
+        float score = lineScore[index] + endScore(info, firstEnd, secondEnd);
+        score += ((info & ABLE_TO_BUILD_FIVE) != 0) ? ableToBuildFiveScore : unableToBuildFiveScore;
+        if ((info & FOUR) != 0) score += fourInARowScore;
+        if (acrossEnd) score += endOfGridScore;
+        return score;
+    }
+
+    /**
+     * The score of both diagonals, where rules (5) and (6) hold for the two lines together.
+     */
+    private static float diagonalScore(int indexA, int indexB, int size, int x, int y) {
+        int infoA = lineInfo[indexA], infoB = lineInfo[indexB];
+        if (((infoA | infoB) & WIN) != 0) return maximumScore;
+        // Rule (4) counts from the second square from the end, see "Line patterns"
+        float score = lineScore[indexA] + lineScore[indexB] + endScore(infoA, size-2 - x, x-1) +
+                endScore(infoB, size-2 - x, x-1);
+        score += ((infoA & infoB & ABLE_TO_BUILD_FIVE) != 0) ? ableToBuildFiveScore : unableToBuildFiveScore;
+        if (((infoA | infoB) & FOUR) != 0) score += fourInARowScore;
         if (x == size-1 || x == 0) score += endOfGridScore;
+        if (y == size-1 || y == 0) score += endOfGridScore;
         return score;
     }
 
-    private static float horizontalScore(char[][] grid, char player, int size, int x, int y) {
-        char opponent = (player == 'X') ? 'O': 'X';
-        int countPlayer = 1, countOpponent = 0, countPlayerAndBlanks = 1;
-        boolean onlyPlayerSymbolsVisited;
+    /**
+     * Rule (4): endOfGridScore for each side where the symbols in a row next to the move reach the end.
+     */
+    private static float endScore(int info, int firstEnd, int secondEnd) {
+        int firstRun = (info >>> RUN_SHIFT) & 7, secondRun = (info >>> (RUN_SHIFT + 3)) & 7;
         float score = 0;
-        // Check right, check for square == player
-        onlyPlayerSymbolsVisited = true;
-        for (int i=x+1; i<size; i++) {
-            if (grid[y][i] != player) onlyPlayerSymbolsVisited = false;
-            if (grid[y][i] != opponent) countPlayerAndBlanks++;
-            if (grid[y][i] == player && onlyPlayerSymbolsVisited) {
-                countPlayer++;
-                if (countPlayer == 5) return maximumScore;
-                if (i == size-1) score += endOfGridScore;
-                score += friendlyNeighborScore;
-            } else if (grid[y][i] == opponent) break;
-        }
-        // Check right, check for square == opponent
-        for (int i=x+1; i<size; i++) {
-            if (countOpponent == 3 && grid[y][i] == '*') score += preventFourInARowScore;
-            if (grid[y][i] == opponent) {
-                countOpponent++;
-                if (countOpponent == 4) score += protectionScore;
-                if (i == size-1) score += endOfGridScore;
-                score += hostileNeighborScore;
-            }
-            else break;
-        }
-        // Check left, check for square == player
-        onlyPlayerSymbolsVisited = true;
-        for (int i=x-1; i>=0; i--) {
-            if (grid[y][i] != player) onlyPlayerSymbolsVisited = false;
-            if (grid[y][i] != opponent) countPlayerAndBlanks++;
-            if (grid[y][i] == player && onlyPlayerSymbolsVisited) {
-                countPlayer++;
-                if (countPlayer == 5) return maximumScore;
-                if (i == 0) score += endOfGridScore;
-                score += friendlyNeighborScore;
-            } else if (grid[y][i] == opponent) break;
-        }
-        // Check left, check for square == opponent
-        for (int i=x-1; i>=0; i--) {
-            if (countOpponent == 3 && grid[y][i] == '*') score += preventFourInARowScore;
-            if (grid[y][i] == opponent) {
-                countOpponent++;
-                if (countOpponent == 4) score += protectionScore;
-                if (i == 0) score += endOfGridScore;
-                score += hostileNeighborScore;
-            }
-            else break;
-        }
-        if (countPlayerAndBlanks < 5) score += unableToBuildFiveScore;
-        else score += ableToBuildFiveScore;
-        if (countPlayer == 4) score += fourInARowScore;
-        if (y == size-1 || y == 0) score += endOfGridScore;
+        if (firstEnd > 0 && firstRun >= firstEnd) score += endOfGridScore;
+        if (secondEnd > 0 && secondRun >= secondEnd) score += endOfGridScore;
         return score;
     }
 
-    private static float diagonalScore(char[][] grid, char player, int size, int x, int y) {
-        char opponent = (player == 'X') ? 'O': 'X';
-        int countPlayerA = 1, countOpponentA = 0;
-        int countPlayerB = 1, countOpponentB = 0;
-        int countPlayerAndBlanksA = 1, countPlayerAndBlanksB = 1;
-        boolean onlyPlayerSymbolsVisitedA, onlyPlayerSymbolsVisitedB;
+    /**
+     * Apply the rules to one line and fill in lineScore[index] and lineInfo[index]. The squares are scanned
+     * the way the rules describe: outwards from the move, first for the player's symbols and then for the
+     * opponent's, first in one direction and then in the other.
+     * @param first the digits of the squares in the first direction, nearest first.
+     * @param second the digits of the squares in the second direction, nearest first.
+     */
+    private static void scoreLine(int index, int[] first, int[] second) {
+        int countPlayer = 1, countOpponent = 0, countPlayerAndBlanks = 1;
+        int[] run = new int[2];
         float score = 0;
-        // Check right upwards, check for square == player
-        onlyPlayerSymbolsVisitedA = true;
-        int x1 = x+1, y1 = y-1;
-        while (x1 < size && y1 >= 0) {
-            if (grid[y1][x1] != player) onlyPlayerSymbolsVisitedA = false;
-            if (grid[y1][x1] != opponent) countPlayerAndBlanksA++;
-            if (grid[y1][x1] == player && onlyPlayerSymbolsVisitedA) {
-                countPlayerA++; x1++; y1--;
-                if (countPlayerA == 5) return maximumScore;
-                if (x1 == size-1 || y == 0) score += endOfGridScore;
-                score += friendlyNeighborScore;
-            } else if (grid[y1][x1] == opponent) break;
-            else {
-                x1++; y1--;
+        for (int side=0; side<2; side++) {
+            int[] squares = (side == 0) ? first : second;
+            // Check for square == player
+            boolean onlyPlayerSymbolsVisited = true;
+            for (int i=0; i<SIDE && squares[i]!=WALL; i++) {
+                if (squares[i] != OWN) onlyPlayerSymbolsVisited = false;
+                if (squares[i] != OPPONENT) countPlayerAndBlanks++; // Rule (6), see below
+                if (squares[i] == OWN && onlyPlayerSymbolsVisited) {
+                    countPlayer++;
+                    if (countPlayer == 5) { // Rule (1)
+                        lineInfo[index] = WIN;
+                        return;
+                    }
+                    score += friendlyNeighborScore;
+                    run[side]++;
+                } else if (squares[i] == OPPONENT) break;
             }
-        }
-        // Check right upwards, check for square == opponent
-        x1 = x+1; y1 = y-1;
-        while (x1 < size && y1 >= 0) {
-            if (countOpponentA == 3 && grid[y1][x1] == '*') score += preventFourInARowScore;
-            if (grid[y1][x1] == opponent) {
-                countOpponentA++; x1++; y1--;
-                if (countOpponentA == 4) score += protectionScore;
-                if (x1 == size-1 || y == 0) score += endOfGridScore;
-                score += hostileNeighborScore;
-            }
-            else break;
-        }
-        // Check right downwards, check for square == player
-        onlyPlayerSymbolsVisitedB = true;
-        x1 = x+1; y1 = y+1;
-        while (x1 < size && y1 < size) {
-            if (grid[y1][x1] != player) onlyPlayerSymbolsVisitedB = false;
-            if (grid[y1][x1] != opponent) countPlayerAndBlanksB++;
-            if (grid[y1][x1] == player && onlyPlayerSymbolsVisitedB) {
-                countPlayerB++; x1++; y1++;
-                if (countPlayerB == 5) return maximumScore;
-                if (x1 == size-1 || y == size-1) score += endOfGridScore;
-                score += friendlyNeighborScore;
-            } else if (grid[y1][x1] == opponent) break;
-            else {
-                x1++; y1++;
-            }
-        }
-        // Check right downwards, check for square == opponent
-        x1 = x+1; y1 = y+1;
-        while (x1 < size && y1 < size) {
-            if (countOpponentB == 3 && grid[y1][x1] == '*') score += preventFourInARowScore;
-            if (grid[y1][x1] == opponent) {
-                countOpponentB++; x1++; y1++;
-                if (countOpponentB == 4) score += protectionScore;
-                if (x1 == size-1 || y == size-1) score += endOfGridScore;
-                score += hostileNeighborScore;
-            }
-            else break;
-        }
-        // Check left downwards, check for square == player
-        onlyPlayerSymbolsVisitedA = true;
-        x1 = x-1; y1 = y+1;
-        while (x1 >= 0 && y1 < size) {
-            if (grid[y1][x1] != player) onlyPlayerSymbolsVisitedA = false;
-            if (grid[y1][x1] != opponent) countPlayerAndBlanksA++;
-            if (grid[y1][x1] == player && onlyPlayerSymbolsVisitedA) {
-                countPlayerA++; x1--; y1++;
-                if (countPlayerA == 5) return maximumScore;
-                if (x1 == 0 || y == size-1) score += endOfGridScore;
-                score += friendlyNeighborScore;
-            } else if (grid[y1][x1] == opponent) break;
-            else {
-                x1--; y1++;
-            }
-        }
-        // Check left downwards, check for square == opponent
-        x1 = x-1; y1 = y+1;
-        while (x1 >= 0 && y1 < size) {
-            if (countOpponentA == 3 && grid[y1][x1] == '*') score += preventFourInARowScore;
-            if (grid[y1][x1] == opponent) {
-                countOpponentA++; x1--; y1++;
-                if (countOpponentA == 4) score += protectionScore;
-                if (x1 == 0 || y == size-1) score += endOfGridScore;
-                score += hostileNeighborScore;
-            }
-            else break;
-        }
-        // Check left upwards, check for square == player
-        onlyPlayerSymbolsVisitedB = true;
-        x1 = x-1; y1 = y-1;
-        while (x1 >= 0 && y1 > 0) {
-            if (grid[y1][x1] != player) onlyPlayerSymbolsVisitedB = false;
-            if (grid[y1][x1] != opponent) countPlayerAndBlanksB++;
-            if (grid[y1][x1] == player && onlyPlayerSymbolsVisitedB) {
-                countPlayerB++; x1--; y1--;
-                if (countPlayerB == 5) return maximumScore;
-                if (x1 == 0 || y == 0) score += endOfGridScore;
-                score += friendlyNeighborScore;
-            } else if (grid[y1][x1] == opponent) break;
-            else {
-                x1--; y1--;
-            }
-        }
-        // Check left upwards, check for square == opponent
-        x1 = x-1; y1 = y-1;
-        while (x1 >= 0 && y1 > 0) {
-            if (countOpponentB == 3 && grid[y1][x1] == '*') score += preventFourInARowScore;
-            if (grid[y1][x1] == opponent) {
-                countOpponentB++; x1--; y1--;
-                if (countOpponentB == 4) score += protectionScore;
-                if (x1 == 0 || y == 0) score += endOfGridScore;
-                score += hostileNeighborScore;
+            // Check for square == opponent
+            for (int i=0; i<SIDE && squares[i]!=WALL; i++) {
+                if (countOpponent == 3 && squares[i] == BLANK) score += preventFourInARowScore; // Rule (3)
+                if (squares[i] == OPPONENT) {
+                    countOpponent++;
+                    if (countOpponent == 4) score += protectionScore; // Rule (2)
+                    score += hostileNeighborScore;
+                    run[side]++;
+                }
+                else break;
             }
-            else break;
         }
-        if (countPlayerAndBlanksA < 5 || countPlayerAndBlanksB < 5) score += unableToBuildFiveScore;
-        else score += ableToBuildFiveScore;
-        if (countPlayerA == 4 || countPlayerB == 4) score += fourInARowScore;
-        if (x == size-1 || x == 0) score += endOfGridScore;
-        if (y == size-1 || y == 0) score += endOfGridScore;
-        return score;
+        int info = (run[0] << RUN_SHIFT) | (run[1] << (RUN_SHIFT + 3));
+        if (countPlayerAndBlanks >= 5) info |= ABLE_TO_BUILD_FIVE; // Rule (6)
+        if (countPlayer == 4) info |= FOUR; // Rule (5)
+        lineScore[index] = score;
+        lineInfo[index] = (short) info;
     }
 }
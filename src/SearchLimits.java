@@ -0,0 +1,40 @@
+/**
+ * How far Grid.bestMove() may search.
+ */
+
+public class SearchLimits {
+
+    private final int depth;
+    private final long timeLimit;
+
+    /**
+     * @param depth the depth to search to if there is no time limit.
+     * @param timeLimit milliseconds for the search, see Grid.setTimeLimit(), or 0 to search to depth.
+     */
+    public SearchLimits(int depth, long timeLimit) {
+        this.depth = depth;
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * Search to a fixed depth.
+     */
+    public static SearchLimits depth(int depth) {
+        return new SearchLimits(depth, 0);
+    }
+
+    /**
+     * Search with iterative deepening until timeLimit milliseconds have passed.
+     */
+    public static SearchLimits time(long timeLimit) {
+        return new SearchLimits(1, timeLimit);
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getTimeLimit() {
+        return timeLimit;
+    }
+}
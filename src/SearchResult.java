@@ -0,0 +1,87 @@
+/**
+ * The move chosen by Grid.bestMove(), and how it was found. Squares are packed indices: square = y * size + x.
+ */
+
+public class SearchResult {
+
+    // Where the move came from
+    public static final int SEARCH = 0; // Minimax or alpha-beta search
+    public static final int BOOK = 1; // The opening book, see Grid.setOpeningBook()
+    public static final int FORCED_WIN = 2; // The threat space search, see Grid.setThreatSearch()
+    public static final int PONDERED = 3; // The search on the player's time, see Grid.setPondering()
+
+    private final int move;
+    private final float score;
+    private final int depth;
+    private final long nodes;
+    private final long time;
+    private final int[] principalVariation;
+    private final int source;
+
+    /**
+     * @param move the chosen move, or -1 if there was no empty square.
+     * @param score the minimax score of the move, positive if it favours 'X'.
+     * @param depth the depth of the deepest completed iteration, or 0 if the move was not searched.
+     * @param nodes the nodes visited by the search, or by the threat space search for a forced win.
+     * @param time the milliseconds the search took.
+     * @param principalVariation the expected line of play, starting with move.
+     * @param source SEARCH, BOOK, FORCED_WIN or PONDERED.
+     */
+    public SearchResult(int move, float score, int depth, long nodes, long time, int[] principalVariation,
+                        int source) {
+        this.move = move;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.time = time;
+        this.principalVariation = principalVariation;
+        this.source = source;
+    }
+
+    public int getMove() {
+        return move;
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return the expected line of play, starting with the chosen move. Must not be modified.
+     */
+    public int[] getPrincipalVariation() {
+        return principalVariation;
+    }
+
+    public int getSource() {
+        return source;
+    }
+
+    /**
+     * @return the source as a word, e.g. for a log.
+     */
+    public String getSourceName() {
+        switch (source) {
+            case BOOK:
+                return "book";
+            case FORCED_WIN:
+                return "forced win";
+            case PONDERED:
+                return "pondered";
+            default:
+                return "search";
+        }
+    }
+}
@@ -0,0 +1,182 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * Statistics of one search, see Grid.getSearchStats(), as a one-line log (toString()) or as JSON (toJson()).
+ *
+ * The search counts in plain long fields of the grid, and of each worker (see Grid.setThreads()), which are
+ * only written by the thread that searches with it. The counts of the workers are added up when the search
+ * is done, so counting costs no more than an increment. The bytes allocated are measured the same way: by
+ * each thread for itself, with ThreadMXBean, before and after it searches.
+ */
+
+public class SearchStats {
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = threadMXBean();
+
+    private final int depth;
+    private final int threads;
+    private final long time;
+    private final long nodes;
+    private final long leafEvaluations;
+    private final long interiorNodes;
+    private final long children;
+    private final long betaCutoffs;
+    private final long firstChildCutoffs;
+    private final long transpositionProbes;
+    private final long transpositionHits;
+    private final long transpositionMisses;
+    private final long[] iterationTimes;
+    private final long allocatedBytes;
+
+    /**
+     * @param depth the depth of the deepest completed iteration.
+     * @param threads the threads that searched.
+     * @param time the milliseconds the search took.
+     * @param nodes the nodes visited.
+     * @param leafEvaluations the leaves that were scored.
+     * @param interiorNodes the nodes whose children were generated.
+     * @param children the children generated at the interior nodes.
+     * @param betaCutoffs the nodes whose remaining children were cut off, see Grid.getBetaCutoffs().
+     * @param firstChildCutoffs the beta cutoffs caused by the first child searched.
+     * @param transpositionProbes the lookups in the transposition table.
+     * @param transpositionHits the lookups whose entry decided the score of the node.
+     * @param transpositionMisses the lookups that found no entry.
+     * @param iterationTimes the milliseconds each completed iteration of iterative deepening took.
+     * @param allocatedBytes the bytes allocated by the threads that searched, or -1 if the JVM cannot tell.
+     */
+    public SearchStats(int depth, int threads, long time, long nodes, long leafEvaluations, long interiorNodes,
+                       long children, long betaCutoffs, long firstChildCutoffs, long transpositionProbes,
+                       long transpositionHits, long transpositionMisses, long[] iterationTimes, long allocatedBytes) {
+        this.depth = depth;
+        this.threads = threads;
+        this.time = time;
+        this.nodes = nodes;
+        this.leafEvaluations = leafEvaluations;
+        this.interiorNodes = interiorNodes;
+        this.children = children;
+        this.betaCutoffs = betaCutoffs;
+        this.firstChildCutoffs = firstChildCutoffs;
+        this.transpositionProbes = transpositionProbes;
+        this.transpositionHits = transpositionHits;
+        this.transpositionMisses = transpositionMisses;
+        this.iterationTimes = iterationTimes;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) bean;
+        return threadMXBean.isThreadAllocatedMemoryEnabled() ? threadMXBean : null;
+    }
+
+    /**
+     * @return the bytes allocated by the calling thread so far, or -1 if the JVM cannot tell.
+     */
+    public static long allocatedBytes() {
+        return (THREAD_MX_BEAN == null) ? -1 : THREAD_MX_BEAN.getCurrentThreadAllocatedBytes();
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getNodesPerSecond() {
+        return nodes * 1000 / Math.max(time, 1);
+    }
+
+    public long getLeafEvaluations() {
+        return leafEvaluations;
+    }
+
+    public long getInteriorNodes() {
+        return interiorNodes;
+    }
+
+    /**
+     * @return the average number of children generated at an interior node.
+     */
+    public double getBranchingFactor() {
+        return (interiorNodes == 0) ? 0 : (double) children / interiorNodes;
+    }
+
+    public long getBetaCutoffs() {
+        return betaCutoffs;
+    }
+
+    /**
+     * @return the share of beta cutoffs that were caused by the first child searched, which measures how
+     * good the move ordering is.
+     */
+    public double getFirstChildCutoffRate() {
+        return (betaCutoffs == 0) ? 0 : (double) firstChildCutoffs / betaCutoffs;
+    }
+
+    public long getTranspositionProbes() {
+        return transpositionProbes;
+    }
+
+    public long getTranspositionHits() {
+        return transpositionHits;
+    }
+
+    public long getTranspositionMisses() {
+        return transpositionMisses;
+    }
+
+    public long[] getIterationTimes() {
+        return iterationTimes.clone();
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return the statistics as key=value pairs on one line, e.g. for a log file.
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "depth=%d threads=%d timeMs=%d nodes=%d nps=%d leafEvals=%d " +
+                "interiorNodes=%d branchingFactor=%.2f betaCutoffs=%d firstChildCutoffRate=%.3f ttProbes=%d " +
+                "ttHits=%d ttMisses=%d iterationMs=%s allocatedBytes=%d", depth, threads, time, nodes,
+                getNodesPerSecond(), leafEvaluations, interiorNodes, getBranchingFactor(), betaCutoffs,
+                getFirstChildCutoffRate(), transpositionProbes, transpositionHits, transpositionMisses,
+                join(iterationTimes), allocatedBytes);
+    }
+
+    /**
+     * @return the statistics as a JSON object on one line.
+     */
+    public String toJson() {
+        return String.format(Locale.ROOT, "{\"depth\":%d,\"threads\":%d,\"timeMs\":%d,\"nodes\":%d,\"nps\":%d," +
+                "\"leafEvals\":%d,\"interiorNodes\":%d,\"branchingFactor\":%.2f,\"betaCutoffs\":%d," +
+                "\"firstChildCutoffRate\":%.3f,\"ttProbes\":%d,\"ttHits\":%d,\"ttMisses\":%d," +
+                "\"iterationMs\":[%s],\"allocatedBytes\":%d}", depth, threads, time, nodes, getNodesPerSecond(),
+                leafEvaluations, interiorNodes, getBranchingFactor(), betaCutoffs, getFirstChildCutoffRate(),
+                transpositionProbes, transpositionHits, transpositionMisses, join(iterationTimes), allocatedBytes);
+    }
+
+    private static String join(long[] values) {
+        StringBuilder joined = new StringBuilder();
+        for (int i=0; i<values.length; i++) {
+            if (i > 0) joined.append(',');
+            joined.append(values[i]);
+        }
+        return joined.toString();
+    }
+}
@@ -0,0 +1,180 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays the computer against itself and appends the games to a GameCorpus, e.g. to tune the scores in
+ * ScoreEvaluation or to check that a change to the search does not make it play worse.
+ *
+ * Games are shared among a pool of threads. Each thread keeps one engine per player (see Grid.bestMove()) for
+ * all of its games, so the engines keep their transposition tables and scratch space, and one Board that
+ * keeps the game itself. Every game starts with a few random moves, seeded by the number of the game, so that
+ * the games differ and each can be played again.
+ *
+ * Usage: java SelfPlay file [games [threads [size [depth [randomMoves [threatNodes]]]]]]
+ * threatNodes is the node budget of the threat space search (see Grid.setThreatSearch()). It is 0 (off) by
+ * default, since on large grids the search for defensive moves takes most of the time. The arguments are
+ * checked before the corpus is opened, see checkArguments().
+ */
+
+public class SelfPlay {
+
+    private static final int CANDIDATE_RADIUS = 2; // See Grid.setCandidateRadius()
+    private static final int PROGRESS_INTERVAL = 100; // Games between progress reports
+    private static final String USAGE =
+            "Usage: java SelfPlay file [games [threads [size [depth [randomMoves [threatNodes]]]]]]";
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if (args.length == 0) {
+            System.out.println(USAGE);
+            return;
+        }
+        String file = args[0];
+        int games, threads, size, depth, randomMoves;
+        long threatNodes;
+        try {
+            games = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+            threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            size = (args.length > 3) ? Integer.parseInt(args[3]) : 15;
+            depth = (args.length > 4) ? Integer.parseInt(args[4]) : 2;
+            randomMoves = (args.length > 5) ? Integer.parseInt(args[5]) : 4;
+            threatNodes = (args.length > 6) ? Long.parseLong(args[6]) : 0;
+        } catch (NumberFormatException e) {
+            System.out.println("Not a number: " + e.getMessage() + "\n" + USAGE);
+            System.exit(1);
+            return;
+        }
+        String error = checkArguments(games, threads, size, depth, randomMoves, threatNodes);
+        if (error != null) {
+            System.out.println(error + "\n" + USAGE);
+            System.exit(1);
+        }
+
+        GameCorpus corpus = new GameCorpus(file);
+        AtomicInteger nextGame = new AtomicInteger();
+        AtomicLong positions = new AtomicLong();
+        AtomicLong nodes = new AtomicLong();
+        int[] outcomes = new int[3];
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i=0; i<threads; i++) {
+            tasks.add(() -> {
+                Grid engineX = newEngine(size, depth, threatNodes), engineO = newEngine(size, depth, threatNodes);
+                Board board = new Board(size);
+                for (int game=nextGame.getAndIncrement(); game<games; game=nextGame.getAndIncrement()) {
+                    GameCorpus.Game result = play(engineX, engineO, board, depth, randomMoves, new Random(game),
+                            nodes);
+                    corpus.append(result);
+                    positions.addAndGet(result.moves.length);
+                    synchronized (outcomes) {
+                        outcomes[result.outcome]++;
+                        int played = outcomes[0] + outcomes[1] + outcomes[2];
+                        if (played % PROGRESS_INTERVAL == 0) report(played, positions.get(), nodes.get(), start);
+                    }
+                }
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> task : pool.invokeAll(tasks)) task.get(); // Rethrows what a game threw
+        } finally {
+            pool.shutdown();
+            corpus.close();
+        }
+        report(games, positions.get(), nodes.get(), start);
+        System.out.println("'X' won " + outcomes[GameCorpus.X_WINS] + ", 'O' won " + outcomes[GameCorpus.O_WINS] +
+                ", ties: " + outcomes[GameCorpus.TIE]);
+    }
+
+    /**
+     * @return what is wrong with the arguments, or null if a corpus can be played with them. The grid must
+     * have room for five in a row and fit in a GameCorpus record, and the random moves must leave an empty
+     * square.
+     */
+    private static String checkArguments(int games, int threads, int size, int depth, int randomMoves,
+                                         long threatNodes) {
+        if (games < 1) return "games must be at least 1";
+        if (threads < 1) return "threads must be at least 1";
+        if (size < 5 || size > 255) return "size must be from 5 to 255";
+        if (depth < 1) return "depth must be at least 1";
+        if (randomMoves < 0 || randomMoves >= size * size || randomMoves > 255) {
+            return "randomMoves must be from 0 to " + Math.min(size * size - 1, 255);
+        }
+        if (threatNodes < 0) return "threatNodes must not be negative";
+        return null;
+    }
+
+    private static Grid newEngine(int size, int depth, long threatNodes) {
+        Grid engine = new Grid(size, depth);
+        engine.setAlphaBeta(true);
+        engine.setMoveOrdering(true);
+        engine.setPrincipalVariationSearch(true);
+        engine.setCandidateRadius(CANDIDATE_RADIUS);
+        engine.setThreatSearch(threatNodes);
+        return engine;
+    }
+
+    /**
+     * Play one game: randomMoves random moves, and then the engines in turn until one wins or the game is
+     * a tie.
+     * @param board the board of the game, which is cleared first.
+     * @param nodes the nodes searched by the engines are added to it.
+     */
+    private static GameCorpus.Game play(Grid engineX, Grid engineO, Board board, int depth, int randomMoves,
+                                        Random random, AtomicLong nodes) {
+        int size = board.getSize();
+        char[][] empty = new char[size][size];
+        for (char[] row : empty) Arrays.fill(row, '*');
+        board.load(empty);
+        int[] moves = new int[size * size];
+        int ply = 0;
+        SearchLimits limits = SearchLimits.depth(depth);
+        while (true) {
+            char player = (ply % 2 == 0) ? 'X' : 'O';
+            if (ply < randomMoves) {
+                moves[ply] = randomMove(board, random);
+            } else {
+                SearchResult result = ((player == 'X') ? engineX : engineO).bestMove(board.getGrid(), limits);
+                nodes.addAndGet(result.getNodes());
+                moves[ply] = result.getMove();
+            }
+            board.make(moves[ply], player);
+            ply++;
+            int outcome = -1;
+            if (board.hasFiveThrough(moves[ply - 1])) outcome = (player == 'X') ? GameCorpus.X_WINS : GameCorpus.O_WINS;
+            else if (ply == size * size || board.isTie()) outcome = GameCorpus.TIE;
+            if (outcome >= 0) {
+                return new GameCorpus.Game(size, outcome, Math.min(randomMoves, ply), Arrays.copyOf(moves, ply));
+            }
+        }
+    }
+
+    /**
+     * @return a random empty square of board, drawn like Grid.makeRandomMove() does.
+     */
+    private static int randomMove(Board board, Random random) {
+        int size = board.getSize();
+        while (true) {
+            int x = random.nextInt(size);
+            int y = random.nextInt(size);
+            if (board.getGrid()[y][x] == '*') return y*size + x;
+        }
+    }
+
+    private static void report(int games, long positions, long nodes, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("Games: %d, positions: %d, time: %.1f s, games/s: %.2f, " +
+                "positions/s: %.0f, nodes/s: %.0f", games, positions, seconds, games / seconds, positions / seconds,
+                nodes / seconds));
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * The eight symmetries of a square grid: the four rotations, each with or without a reflection. A position
+ * and its mirror images are the same position for the game, so the opening book (see OpeningBook) stores
+ * each of them only once, and the search skips moves that mirror another move (see
+ * Grid.setSymmetryPruning()).
+ *
+ * Symmetry s maps square (x, y) by first swapping x and y if bit 2 of s is set, then flipping x if bit 0 is
+ * set and flipping y if bit 1 is set. Symmetry 0 is the identity.
+ *
+ * Squares are identified by packed indices: square = y * size + x.
+ */
+
+public class Symmetry {
+
+    public static final int COUNT = 8;
+
+    /**
+     * @return the square that symmetry maps square to.
+     */
+    public static int apply(int square, int symmetry, int size) {
+        int x = square % size, y = square / size;
+        if ((symmetry & 4) != 0) {
+            int tmp = x;
+            x = y;
+            y = tmp;
+        }
+        if ((symmetry & 1) != 0) x = size - 1 - x;
+        if ((symmetry & 2) != 0) y = size - 1 - y;
+        return y*size + x;
+    }
+
+    /**
+     * @return the square that symmetry maps to square, i.e. the inverse of apply().
+     */
+    public static int invert(int square, int symmetry, int size) {
+        int x = square % size, y = square / size;
+        if ((symmetry & 1) != 0) x = size - 1 - x;
+        if ((symmetry & 2) != 0) y = size - 1 - y;
+        if ((symmetry & 4) != 0) {
+            int tmp = x;
+            x = y;
+            y = tmp;
+        }
+        return y*size + x;
+    }
+}
@@ -1,3 +1,6 @@
+import java.util.Arrays;
+import java.util.Random;
+
 /**
  * This class is made in order for me to be able to play around with different scenarios and check that
  * the computer player makes the correct call. Assuming minimax depth is set to 1, each scenario needs
@@ -255,4 +258,41 @@ public class Test {
                        "Test is passed if 'O' tries to block 'X' on the diagonal.\n");
           }
      }
+
+     // ---------- Generated positions ----------
+
+     /**
+      * Play numOfMoves random moves, 'X' first and starting from the center, each within radius of a symbol
+      * and none of them five in a row. The same seed always gives the same game, so the positions can be used
+      * to compare searches on larger grids than the scenarios above, see Bench.
+      * @return the moves, as packed square indices y * size + x.
+      */
+     static int[] randomGame(int size, int numOfMoves, int radius, long seed) {
+          Board board = new Board(size);
+          board.setCandidateRadius(radius);
+          Random random = new Random(seed);
+          int[] moves = new int[numOfMoves];
+          int[] candidates = new int[size * size];
+          moves[0] = (size / 2) * size + size / 2;
+          board.make(moves[0], 'X');
+          for (int i=1; i<numOfMoves; i++) {
+               char player = (i % 2 == 0) ? 'X' : 'O';
+               int numOfCandidates = board.getCandidates(candidates);
+               do {
+                    moves[i] = candidates[random.nextInt(numOfCandidates)];
+               } while (board.isWinningSquare(moves[i], player));
+               board.make(moves[i], player);
+          }
+          return moves;
+     }
+
+     /**
+      * @return the grid after the first numOfMoves of moves, see randomGame().
+      */
+     static char[][] toGrid(int size, int[] moves, int numOfMoves) {
+          char[][] grid = new char[size][size];
+          for (char[] row : grid) Arrays.fill(row, '*');
+          for (int i=0; i<numOfMoves; i++) grid[moves[i] / size][moves[i] % size] = (i % 2 == 0) ? 'X' : 'O';
+          return grid;
+     }
 }
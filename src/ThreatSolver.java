@@ -0,0 +1,269 @@
+/**
+ * Threat space search: proves that a player can force five in a row by a sequence of threats, which the
+ * opponent has to answer every time.
+ *
+ * A "four" is a move after which the attacker would get five in a row on some blank square. The defender
+ * has exactly one reply, to take that square, so a victory by continuous fours (VCF) is found by trying only
+ * the attacker's fours and the forced replies. If a move gives the attacker two such squares at once, the
+ * defender cannot block both and the attacker has won.
+ *
+ * A "three" is a move after which the attacker would get two winning squares with one more move. The
+ * defender has several replies, but only the ones that take away every such follow-up, or that make a four
+ * of their own, keep the game going; after any other reply the attacker wins at once. A victory by
+ * continuous threats (VCT) also tries the attacker's threes and proves the win against each of those
+ * replies.
+ *
+ * Both searches only look at a few moves per node, so they reach far deeper than minimax, but they can
+ * still get expensive on crowded grids. Each call to findWin() is therefore limited to a number of nodes,
+ * and gives up without a result once they are used.
+ *
+ * Squares are identified by packed indices: square = y * size + x.
+ */
+
+public class ThreatSolver {
+
+    private static final int VCF_DEPTH = 12; // Maximum number of attacking moves in a VCF
+    private static final int VCT_DEPTH = 5; // Maximum number of attacking moves in a VCT
+    private static final int[][] LINES = {{1, 0}, {0, 1}, {1, 1}, {-1, 1}};
+
+    private final Board board;
+    private final int size;
+    private long nodeBudget;
+    private long nodes;
+    private boolean outOfNodes;
+    private int winningMove;
+    private final int[] wins; // Scratch space for Board.winningSquares()
+    private final int[][] moves; // Attacking moves at each height, fours first
+    private final int[][] threats; // Squares where the attacker would make two fours, for each height
+    private final int[] scratch; // Threats of moves that are only being classified by findThreatMoves()
+
+    /**
+     * @param board the position to search, which is left as it was found.
+     * @param nodeBudget the maximum number of nodes for each call to findWin().
+     */
+    public ThreatSolver(Board board, long nodeBudget) {
+        this.board = board;
+        this.size = board.getSize();
+        this.nodeBudget = nodeBudget;
+        wins = new int[size * size];
+        moves = new int[VCF_DEPTH][size * size];
+        threats = new int[VCF_DEPTH][size * size];
+        scratch = new int[size * size];
+    }
+
+    public void setNodeBudget(long nodeBudget) {
+        this.nodeBudget = nodeBudget;
+    }
+
+    public long getNodeBudget() {
+        return nodeBudget;
+    }
+
+    /**
+     * @return the number of nodes searched by the last call to findWin().
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return true if the last call to findWin() ran out of nodes before it could prove a win.
+     */
+    public boolean isOutOfNodes() {
+        return outOfNodes;
+    }
+
+    /**
+     * Search for a forced win for attacker, who is to move: first by continuous fours and then, if threes
+     * is true, by continuous threats.
+     * @return the first move of the win, or -1 if none was found.
+     */
+    public int findWin(char attacker, boolean threes) {
+        nodes = 0;
+        outOfNodes = false;
+        winningMove = -1;
+        if (attack(attacker, 0, VCF_DEPTH, false)) return winningMove;
+        if (threes && !outOfNodes && attack(attacker, 0, VCT_DEPTH, true)) return winningMove;
+        return -1;
+    }
+
+    /**
+     * @param height the number of attacking moves made so far.
+     * @param maxHeight the maximum number of attacking moves.
+     * @param threes true to search threes as well as fours.
+     * @return true if attacker, who is to move, can force five in a row.
+     */
+    private boolean attack(char attacker, int height, int maxHeight, boolean threes) {
+        if (++nodes > nodeBudget) outOfNodes = true;
+        if (outOfNodes) return false;
+        char defender = opponent(attacker);
+        if (board.winningSquares(attacker, wins) > 0) {
+            if (height == 0) winningMove = wins[0];
+            return true;
+        }
+        int numOfThreats = board.winningSquares(defender, wins);
+        if (numOfThreats >= 2 || height == maxHeight) return false;
+        int[] move = moves[height];
+        int numOfMoves;
+        if (numOfThreats == 1) {
+            // The defender has a four, so blocking it is the only move that does not lose, and it has to be
+            // a threat as well
+            move[0] = wins[0];
+            numOfMoves = 1;
+        } else {
+            numOfMoves = findThreatMoves(attacker, move, threes);
+        }
+        for (int i=0; i<numOfMoves; i++) {
+            board.make(move[i], attacker);
+            boolean win;
+            int numOfFours = foursThrough(move[i], attacker, true);
+            if (numOfFours >= 2) {
+                win = true;
+            } else if (numOfFours == 1) {
+                int block = foursThrough(move[i], attacker, false);
+                board.make(block, defender);
+                win = attack(attacker, height + 1, maxHeight, threes);
+                board.unmake(block);
+            } else if (threes) {
+                win = defendAll(attacker, move[i], height, maxHeight);
+            } else {
+                win = false;
+            }
+            board.unmake(move[i]);
+            if (outOfNodes) return false;
+            if (win) {
+                if (height == 0) winningMove = move[i];
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The attacker has just played square. If it is a three, try every reply of the defender that does not
+     * lose at once.
+     * @return true if the attacker wins against every such reply, false if square is no three or some reply
+     * holds.
+     */
+    private boolean defendAll(char attacker, int square, int height, int maxHeight) {
+        int[] threat = threats[height];
+        int numOfThreats = findThreats(square, attacker, threat);
+        if (numOfThreats == 0) return false;
+        char defender = opponent(attacker);
+        for (int reply=0; reply<size*size; reply++) {
+            if (!isBlank(reply) || !isDefence(reply, defender, threat, numOfThreats)) continue;
+            board.make(reply, defender);
+            boolean win = attack(attacker, height + 1, maxHeight, true);
+            board.unmake(reply);
+            if (!win) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check if the defender playing reply keeps the game going after a three: either it is a four, or it
+     * leaves the attacker no square among threat to make two fours with.
+     */
+    private boolean isDefence(int reply, char defender, int[] threat, int numOfThreats) {
+        if (board.getMostInWindow(reply, defender) >= 3) return true; // A four of its own
+        // A symbol off the lines through a threat cannot take away any of its fours
+        for (int i=0; i<numOfThreats; i++) {
+            if (threat[i] != reply && !inLine(reply, threat[i])) return false;
+        }
+        char attacker = opponent(defender);
+        boolean defence = true;
+        board.make(reply, defender);
+        for (int i=0; defence && i<numOfThreats; i++) {
+            if (threat[i] == reply) continue;
+            board.make(threat[i], attacker);
+            defence = foursThrough(threat[i], attacker, true) < 2;
+            board.unmake(threat[i]);
+        }
+        board.unmake(reply);
+        return defence;
+    }
+
+    /**
+     * Find the moves of attacker that make a four, followed by the ones that make a three if threes is true.
+     * @return the number of moves found.
+     */
+    private int findThreatMoves(char attacker, int[] move, boolean threes) {
+        int numOfFours = 0, numOfMoves = 0;
+        for (int square=0; square<size*size; square++) {
+            // A four needs a window that already holds three symbols of attacker, a three one with two
+            int most = isBlank(square) ? board.getMostInWindow(square, attacker) : -1;
+            if (most < (threes ? 2 : 3)) continue;
+            board.make(square, attacker);
+            if (most >= 3) {
+                // Keep the fours at the front
+                move[numOfMoves++] = move[numOfFours];
+                move[numOfFours++] = square;
+            } else if (threes && findThreats(square, attacker, scratch) > 0) {
+                move[numOfMoves++] = square;
+            }
+            board.unmake(square);
+        }
+        return numOfMoves;
+    }
+
+    /**
+     * Find the blank squares on the lines through square, the latest move of attacker, where attacker would
+     * make two fours at once.
+     * @return the number of squares found.
+     */
+    private int findThreats(int square, char attacker, int[] threat) {
+        int count = 0;
+        int x = square % size, y = square / size;
+        for (int[] line : LINES) {
+            for (int step=-4; step<=4; step++) {
+                int tx = x + step*line[0], ty = y + step*line[1];
+                if (step == 0 || !onGrid(tx, ty) || !isBlank(ty*size + tx) ||
+                        board.getMostInWindow(ty*size + tx, attacker) < 3) continue;
+                board.make(ty*size + tx, attacker);
+                if (foursThrough(ty*size + tx, attacker, true) >= 2) threat[count++] = ty*size + tx;
+                board.unmake(ty*size + tx);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Look for the squares where attacker would get five in a row on the lines through square, the latest
+     * move of attacker.
+     * @param count true to count the squares, false to return the first one.
+     * @return the number of squares, or the first square (-1 if none).
+     */
+    private int foursThrough(int square, char attacker, boolean count) {
+        int numOfSquares = 0;
+        int x = square % size, y = square / size;
+        for (int[] line : LINES) {
+            for (int step=-4; step<=4; step++) {
+                int tx = x + step*line[0], ty = y + step*line[1];
+                if (step == 0 || !onGrid(tx, ty) || !board.isWinningSquare(ty*size + tx, attacker)) continue;
+                if (!count) return ty*size + tx;
+                numOfSquares++;
+            }
+        }
+        return count ? numOfSquares : -1;
+    }
+
+    /**
+     * Check if a and b are on a common line, at most four steps apart.
+     */
+    private boolean inLine(int a, int b) {
+        int dx = Math.abs(a % size - b % size), dy = Math.abs(a / size - b / size);
+        return dx <= 4 && dy <= 4 && (dx == 0 || dy == 0 || dx == dy);
+    }
+
+    private boolean isBlank(int square) {
+        return board.getGrid()[square / size][square % size] == '*';
+    }
+
+    private boolean onGrid(int x, int y) {
+        return x >= 0 && y >= 0 && x < size && y < size;
+    }
+
+    private static char opponent(char player) {
+        return (player == 'X') ? 'O' : 'X';
+    }
+}
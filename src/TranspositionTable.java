@@ -0,0 +1,112 @@
+import java.util.Arrays;
+
+/**
+ * Fixed-size hash table of previously searched game positions, indexed by their Zobrist key (see Board).
+ *
+ * Each entry is a pair of longs: the data (score, depth, bound and best move packed into 64 bits) and the
+ * key XOR the data. The table can thus be shared by several search threads without locks. Two threads
+ * writing the same entry at the same time may leave the key of one with the data of the other, but then
+ * key XOR data no longer gives the key that is probed for, so a torn entry is simply a miss. Since entries
+ * are primitive longs rather than objects, the table can also be large without putting pressure on the
+ * garbage collector.
+ *
+ * The table is split into buckets of two entries: the first entry of a bucket is only replaced by a search
+ * of at least the same depth (depth-preferred), whereas the second entry is always replaced. This way deep,
+ * expensive results survive while recent, shallow results still get a place in the table.
+ */
+
+public class TranspositionTable {
+
+    // Bound types. The stored score is exact, a lower bound (the search failed high) or an upper bound
+    // (the search failed low).
+    public static final byte EXACT = 0;
+    public static final byte LOWER_BOUND = 1;
+    public static final byte UPPER_BOUND = 2;
+
+    /**
+     * Returned by probe() if the position is not in the table. Stored data is never 0, since the depth
+     * field holds depth + 1.
+     */
+    public static final long MISS = 0;
+
+    // Layout of the data: score (bits 32-63), move + 1 (bits 16-31), depth + 1 (bits 8-15), bound (bits 0-7)
+    private final long[] checks; // Key XOR data of each entry
+    private final long[] data;
+    private final int bucketMask;
+
+    /**
+     * @param size the number of entries. Rounded down to a power of two, and at least one bucket.
+     */
+    public TranspositionTable(int size) {
+        int buckets = Integer.highestOneBit(Math.max(size / 2, 1));
+        bucketMask = buckets - 1;
+        checks = new long[2 * buckets];
+        data = new long[2 * buckets];
+    }
+
+    public int size() {
+        return data.length;
+    }
+
+    public void clear() {
+        Arrays.fill(checks, 0);
+        Arrays.fill(data, MISS);
+    }
+
+    /**
+     * Look up a game position.
+     * @param key the Zobrist key of the game position.
+     * @return the data of the matching entry, to be read with getScore() etc., or MISS if the position is
+     * not in the table.
+     */
+    public long probe(long key) {
+        int entry = bucket(key);
+        long entryData = data[entry];
+        if (entryData != MISS && (checks[entry] ^ entryData) == key) return entryData;
+        entryData = data[++entry];
+        if (entryData != MISS && (checks[entry] ^ entryData) == key) return entryData;
+        return MISS;
+    }
+
+    public static float getScore(long entry) {
+        return Float.intBitsToFloat((int) (entry >>> 32));
+    }
+
+    public static int getDepth(long entry) {
+        return (int) ((entry >>> 8) & 0xFF) - 1;
+    }
+
+    public static byte getBound(long entry) {
+        return (byte) entry;
+    }
+
+    /**
+     * @return the best move as a packed square index, or -1.
+     */
+    public static int getMove(long entry) {
+        return (int) ((entry >>> 16) & 0xFFFF) - 1;
+    }
+
+    /**
+     * Store the result of a search. The depth-preferred entry of the bucket is used if it holds the same
+     * position or a search of at most the same depth, otherwise the always-replace entry is overwritten.
+     * @param key the Zobrist key of the game position.
+     * @param score the score returned by the search.
+     * @param depth the depth the position was searched to, at most 254.
+     * @param bound EXACT, LOWER_BOUND or UPPER_BOUND.
+     * @param move the best move found, as a packed square index below 65535.
+     */
+    public void store(long key, float score, int depth, byte bound, int move) {
+        int entry = bucket(key);
+        long entryData = data[entry];
+        if (entryData != MISS && (checks[entry] ^ entryData) != key && depth < getDepth(entryData)) entry++;
+        long newData = ((long) Float.floatToRawIntBits(score) << 32) | ((long) ((move + 1) & 0xFFFF) << 16) |
+                ((Math.min(depth, 254) + 1) << 8) | (bound & 0xFF);
+        checks[entry] = key ^ newData;
+        data[entry] = newData;
+    }
+
+    private int bucket(long key) {
+        return ((int) (key ^ (key >>> 32)) & bucketMask) << 1;
+    }
+}
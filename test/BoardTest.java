@@ -0,0 +1,94 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that the position score that Board keeps up to date as moves are made and unmade equals the score
+ * counted from scratch, see "Position score" in ScoreEvaluation.
+ */
+
+public class BoardTest {
+
+    private static final int[][] LINES = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+
+    /**
+     * @return the sum of ScoreEvaluation.windowScore over every window of five squares in a row on grid
+     * with symbols of only one player, for 'X' minus for 'O'.
+     */
+    private static float countScore(char[][] grid) {
+        int size = grid.length;
+        long score = 0;
+        for (int y=0; y<size; y++) {
+            for (int x=0; x<size; x++) {
+                for (int[] line : LINES) {
+                    int endX = x + 4*line[0], endY = y + 4*line[1];
+                    if (endX < 0 || endX >= size || endY < 0 || endY >= size) continue;
+                    int symbolsX = 0, symbolsO = 0;
+                    for (int i=0; i<5; i++) {
+                        char square = grid[y + i*line[1]][x + i*line[0]];
+                        if (square == 'X') symbolsX++;
+                        else if (square == 'O') symbolsO++;
+                    }
+                    if (symbolsO == 0) score += ScoreEvaluation.windowScore[symbolsX];
+                    if (symbolsX == 0) score -= ScoreEvaluation.windowScore[symbolsO];
+                }
+            }
+        }
+        return (float) score;
+    }
+
+    private static char[][] emptyGrid(int size) {
+        char[][] grid = new char[size][size];
+        for (char[] row : grid) Arrays.fill(row, '*');
+        return grid;
+    }
+
+    @Test
+    public void scoreEqualsCountedScoreAfterRandomMakeAndUnmake() {
+        for (int size : new int[] {5, 9, 15}) {
+            Random random = new Random(size);
+            Board board = new Board(size);
+            board.load(emptyGrid(size));
+            int[] moves = new int[size * size];
+            int numOfMoves = 0;
+            for (int step=0; step<2000; step++) {
+                // Make moves more often than unmaking them, so the board fills up now and then
+                if (numOfMoves > 0 && (numOfMoves == size * size || random.nextInt(3) == 0)) {
+                    board.unmake(moves[--numOfMoves]);
+                } else {
+                    int square;
+                    do {
+                        square = random.nextInt(size * size);
+                    } while (board.getGrid()[square / size][square % size] != '*');
+                    board.make(square, (numOfMoves % 2 == 0) ? 'X' : 'O');
+                    moves[numOfMoves++] = square;
+                }
+                assertEquals(countScore(board.getGrid()), board.getScore(), "size " + size + ", step " + step);
+                assertEquals(size*size - numOfMoves, board.getEmptySquares());
+            }
+        }
+    }
+
+    @Test
+    public void loadGivesTheSameScoreAsMakingTheMoves() {
+        Random random = new Random(1);
+        int size = 15;
+        Board made = new Board(size);
+        made.load(emptyGrid(size));
+        for (int i=0; i<60; i++) {
+            int square;
+            do {
+                square = random.nextInt(size * size);
+            } while (made.getGrid()[square / size][square % size] != '*');
+            made.make(square, (i % 2 == 0) ? 'X' : 'O');
+            Board loaded = new Board(size);
+            loaded.load(made.getGrid());
+            assertEquals(made.getScore(), loaded.getScore());
+            assertEquals(made.getLiveWindows('X'), loaded.getLiveWindows('X'));
+            assertEquals(made.getLiveWindows('O'), loaded.getLiveWindows('O'));
+        }
+    }
+}
@@ -0,0 +1,180 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of Grid.bestMove() on positions at the end of the game, on positions it must reject, and with
+ * symmetry pruning.
+ */
+
+public class GridTest {
+
+    private static char[][] grid(String... rows) {
+        char[][] grid = new char[rows.length][];
+        for (int y=0; y<rows.length; y++) grid[y] = rows[y].toCharArray();
+        return grid;
+    }
+
+    private static Grid engine(int size, boolean alphaBeta, boolean incrementalEvaluation) {
+        Grid engine = new Grid(size, 1);
+        engine.setAlphaBeta(alphaBeta);
+        engine.setMoveOrdering(alphaBeta);
+        engine.setIncrementalEvaluation(incrementalEvaluation);
+        return engine;
+    }
+
+    /**
+     * Search position with every evaluation and search, to depth 1 and deeper than the empty squares, and
+     * check that the move is one of the empty squares.
+     */
+    private static void assertPlaysEmptySquare(char[][] position, int emptySquares) {
+        int size = position.length;
+        for (boolean alphaBeta : new boolean[] {false, true}) {
+            for (boolean incrementalEvaluation : new boolean[] {false, true}) {
+                for (int depth : new int[] {1, 3}) {
+                    SearchResult result = engine(size, alphaBeta, incrementalEvaluation)
+                            .bestMove(position, SearchLimits.depth(depth));
+                    int move = result.getMove();
+                    assertTrue(move >= 0 && move < size*size, "move " + move);
+                    assertEquals('*', position[move / size][move % size]);
+                    assertEquals(Math.min(depth, emptySquares), result.getDepth());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void oneEmptySquareWithXToMove() {
+        assertPlaysEmptySquare(grid(
+                "XOXOO",
+                "OO*OX",
+                "XXXXO",
+                "OOXXX",
+                "OOXOX"), 1);
+    }
+
+    @Test
+    public void twoEmptySquaresWithOToMove() {
+        assertPlaysEmptySquare(grid(
+                "O*OXO",
+                "XOO*X",
+                "XXOOO",
+                "OXXXO",
+                "XXXXO"), 2);
+    }
+
+    @Test
+    public void twoEmptySquaresWithXToMove() {
+        assertPlaysEmptySquare(grid(
+                "OXOXOX",
+                "OOXXOO",
+                "OXXOOX",
+                "X*X*XO",
+                "XOXOXX",
+                "XXOOOO"), 2);
+    }
+
+    @Test
+    public void timedSearchStopsAtTheLastEmptySquare() {
+        SearchResult result = engine(5, true, false).bestMove(grid(
+                "XOXOO",
+                "OO*OX",
+                "XXXXO",
+                "OOXXX",
+                "OOXOX"), SearchLimits.time(50));
+        assertEquals(7, result.getMove());
+        assertEquals(1, result.getDepth());
+    }
+
+    @Test
+    public void rejectsAGameThatIsOver() {
+        char[][] won = grid(
+                "XXXXX*",
+                "OOOO**",
+                "******",
+                "******",
+                "******",
+                "******");
+        assertThrows(IllegalArgumentException.class, () -> engine(6, false, false)
+                .bestMove(won, SearchLimits.depth(1)));
+        assertThrows(IllegalArgumentException.class, () -> engine(6, true, true)
+                .bestMove(won, SearchLimits.depth(1)));
+    }
+
+    @Test
+    public void rejectsAFullGrid() {
+        char[][] full = grid(
+                "XOXOO",
+                "OOXOX",
+                "XXXXO",
+                "OOXXX",
+                "OOXOX");
+        assertThrows(IllegalArgumentException.class, () -> engine(5, true, false)
+                .bestMove(full, SearchLimits.depth(1)));
+    }
+
+    @Test
+    public void rejectsAGridOfTheWrongSize() {
+        assertThrows(IllegalArgumentException.class, () -> engine(6, true, false)
+                .bestMove(grid("*****", "*****", "*****", "*****", "*****"), SearchLimits.depth(1)));
+        assertThrows(IllegalArgumentException.class, () -> engine(5, true, false)
+                .bestMove(grid("*****", "*****", "****", "*****", "*****"), SearchLimits.depth(1)));
+    }
+
+    @Test
+    public void rejectsImpossibleSymbolCounts() {
+        assertThrows(IllegalArgumentException.class, () -> engine(5, true, false)
+                .bestMove(grid("XX***", "*****", "*****", "*****", "*****"), SearchLimits.depth(1)));
+        assertThrows(IllegalArgumentException.class, () -> engine(5, true, false)
+                .bestMove(grid("O****", "*****", "*****", "*****", "*****"), SearchLimits.depth(1)));
+        assertThrows(IllegalArgumentException.class, () -> engine(5, true, false)
+                .bestMove(grid("X?***", "*****", "*****", "*****", "*****"), SearchLimits.depth(1)));
+    }
+
+    /**
+     * @return true if some symmetry that maps position onto itself maps square onto image.
+     */
+    private static boolean isMirrorImage(char[][] position, int square, int image) {
+        int size = position.length;
+        for (int symmetry=0; symmetry<Symmetry.COUNT; symmetry++) {
+            boolean invariant = true;
+            for (int i=0; invariant && i<size*size; i++) {
+                int j = Symmetry.apply(i, symmetry, size);
+                invariant = position[i / size][i % size] == position[j / size][j % size];
+            }
+            if (invariant && Symmetry.apply(square, symmetry, size) == image) return true;
+        }
+        return false;
+    }
+
+    @Test
+    public void symmetryPruningKeepsTheRootResult() {
+        String[][] positions = {
+                {"*******", "*******", "*******", "*******", "*******", "*******", "*******"},
+                {"*******", "*******", "*******", "***X***", "*******", "*******", "*******"},
+                {"*******", "*******", "**O*O**", "***X***", "**X*X**", "*******", "*******"},
+                {"********", "********", "********", "***XO***", "***OX***", "********", "********", "********"},
+        };
+        long prunedNodes = 0, nodes = 0;
+        for (String[] rows : positions) {
+            char[][] position = grid(rows);
+            int size = position.length;
+            for (boolean alphaBeta : new boolean[] {false, true}) {
+                for (int depth : new int[] {1, 2}) {
+                    Grid plain = engine(size, alphaBeta, true);
+                    Grid pruned = engine(size, alphaBeta, true);
+                    pruned.setSymmetryPruning(2);
+                    SearchResult expected = plain.bestMove(position, SearchLimits.depth(depth));
+                    SearchResult result = pruned.bestMove(position, SearchLimits.depth(depth));
+                    assertEquals(expected.getScore(), result.getScore());
+                    assertTrue(isMirrorImage(position, result.getMove(), expected.getMove()));
+                    nodes += expected.getNodes();
+                    prunedNodes += result.getNodes();
+                }
+            }
+        }
+        assertTrue(prunedNodes < nodes, prunedNodes + " nodes with pruning, " + nodes + " without");
+    }
+}